@@ -1 +1,7 @@
-java -Xms12g -Xmx12g -XX:+UseParallelGC -XX:+UnlockDiagnosticVMOptions -XX:+DebugNonSafepoints -jar --enable-preview build/libs/sum_of_cubes-1.0-SNAPSHOT-all.jar
+JAR=build/libs/sum_of_cubes-1.0-SNAPSHOT-all.jar
+# VectorWalk is only in jars built with JDK 16+, and older JDKs don't have the module.
+VECTOR_MODULE=""
+if jar tf "$JAR" | grep -q '^org/cliu/VectorWalk.class$'; then
+  VECTOR_MODULE="--add-modules jdk.incubator.vector"
+fi
+java -Xms12g -Xmx12g -XX:+UseParallelGC -XX:+UnlockDiagnosticVMOptions -XX:+DebugNonSafepoints --enable-preview $VECTOR_MODULE -jar "$JAR"
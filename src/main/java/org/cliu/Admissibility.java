@@ -0,0 +1,100 @@
+package org.cliu;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local admissibility of d for k, that only depends on the prime powers dividing d. For (d, z) to be admissible,
+ * z^3 = k mod p^e for every p^e || d, so a d with a prime power that has no cube root of k is dead: Z_m is empty for it
+ * and for every multiple of it with the same or a higher power of p. `Enumeration` checks this as it extends a number,
+ * and cuts the whole subtree of such a number before steps 1-4 ever run.
+ *
+ * For p not dividing 6k, there's a cube root of k mod p^e iff there is one mod p, which is always the case when
+ * p = 2 mod 3, and otherwise iff k^((p-1)/3) = 1 mod p. So about a third of all primes can never divide d. For the few
+ * primes dividing k, with k = p^v u, any p^e with e <= v is fine, and a higher power needs 3 | v and a cube root of u.
+ * 3 never divides the d0s that are enumerated.
+ *
+ * REMARK: The other local conditions, S_d(p) for the aux primes p not dividing d, are never empty for the k we have
+ * tables for, so they can't rule out a d by themselves and are left to step 4.
+ */
+public class Admissibility {
+    // Each word holds whether primes 63w, ..., 63w + 62 are dead, and its sign bit whether it's been computed.
+    private static final int primesPerWord = 63;
+
+    private final int k;
+    private final PrimeSource primes;
+    private final int numPrimes;
+    private final AtomicLongArray deadPrimes;
+
+    // Subtrees cut, and numbers that were looked at, during enumeration.
+    final LongAdder pruned = new LongAdder();
+    final LongAdder checked = new LongAdder();
+
+    public Admissibility(int k, PrimeSource primes, int numPrimes) {
+        this.k = k;
+        this.primes = primes;
+        this.numPrimes = numPrimes;
+        this.deadPrimes = new AtomicLongArray(numPrimes / primesPerWord + 1);
+    }
+
+    // Whether a number with prime factor primes[primeIdx] to the power `power` can be admissible.
+    boolean isAdmissible(int primeIdx, long prime, int power) {
+        checked.increment();
+        final boolean admissible;
+        if (k % prime == 0) {
+            admissible = hasCubeRootOfKModPower(prime, power);
+        } else {
+            admissible = !isDead(primeIdx);
+        }
+        if (!admissible) pruned.increment();
+        return admissible;
+    }
+
+    private boolean isDead(int primeIdx) {
+        if (primeIdx >= numPrimes) return !hasCubeRootModPrime(primes.prime(primeIdx));
+        final var w = primeIdx / primesPerWord;
+        var word = deadPrimes.get(w);
+        if (word >= 0) {
+            // Computing a word twice when threads race on it is harmless, as they agree on its value.
+            word = Long.MIN_VALUE;
+            for (int i = w * primesPerWord; i < Math.min((w + 1) * primesPerWord, numPrimes); i++) {
+                if (!hasCubeRootModPrime(primes.prime(i))) word |= 1L << (i % primesPerWord);
+            }
+            deadPrimes.set(w, word);
+        }
+        return (word & (1L << (primeIdx % primesPerWord))) != 0;
+    }
+
+    // For primes p > 3 dividing k.
+    private boolean hasCubeRootOfKModPower(long p, int power) {
+        var v = 0;
+        var u = (long) k;
+        for (; u % p == 0; u /= p) v++;
+        if (power <= v) return true;
+        return v % 3 == 0 && hasCubeRootModPrime(p, u);
+    }
+
+    private boolean hasCubeRootModPrime(long p) {
+        return hasCubeRootModPrime(p, k);
+    }
+
+    // For primes p not dividing 3n, where cube roots lift from p to every power of p.
+    private static boolean hasCubeRootModPrime(long p, long n) {
+        if (p % 3 == 2 || n % p == 0 || p == 3) return true;
+        return powMod(Math.floorMod(n, p), (p - 1) / 3, p) == 1;
+    }
+
+    // For p < 2^31, so that products fit in a long.
+    private static long powMod(long b, long e, long p) {
+        var result = 1L;
+        for (b %= p; e > 0; e >>= 1) {
+            if ((e & 1) == 1) result = result * b % p;
+            b = b * b % p;
+        }
+        return result;
+    }
+
+    String stats() {
+        return String.format("pruned %s of %s subtrees with no cube root of k", pruned.sum(), checked.sum());
+    }
+}
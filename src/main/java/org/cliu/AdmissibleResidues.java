@@ -0,0 +1,74 @@
+package org.cliu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The set A_d(q) of step 1 for any k: the z mod q for which x^3 + y^3 + z^3 = k has a solution mod q with
+ * x + y = +-d. q is 3^5, times 2 when d is odd, and the residues only depend on d mod q, so there is one table per k,
+ * indexed by d mod 3^5 and by the parity of d.
+ *
+ * For odd d, x^3 + y^3 is odd, so z = k + 1 mod 2. 3-adically, when k = +-3 mod 9, all of x, y and z are the same
+ * nonzero class mod 3, and expanding the cubes mod 27 pins z mod 9 down from d and k, which is the part of Cassels'
+ * cubic reciprocity argument that carries over to any k. Each power of 3 still cuts z, but by less and less: mod 3^4
+ * 6 of the 81 residues are left, mod 3^5 12 of the 243, a third fewer z, and mod 3^6 33 of the 729, only 8% fewer
+ * again for a q 3 times larger. So q stops at 3^5, which leaves 20 times fewer z to check than q = 1.
+ *
+ * REMARK: For k = 3 cubic reciprocity gives a single residue mod 81, see `Utils.cubicReciprocityConstraint`, which is
+ * stronger than these tables. For other k, z mod 27 is not determined by d in the known solutions, so there's no
+ * such closed form to use.
+ */
+public class AdmissibleResidues {
+    static final int threeAdicModulus = 243;
+    private static final ConcurrentHashMap<Integer, AdmissibleResidues> tables = new ConcurrentHashMap<>();
+
+    private final int k;
+    // Residues of z mod 243 for even d, and mod 486 for odd d, by d mod 243.
+    private final List<List<Long>> evenD = new ArrayList<>(threeAdicModulus);
+    private final List<List<Long>> oddD = new ArrayList<>(threeAdicModulus);
+
+    private AdmissibleResidues(int k) {
+        this.k = k;
+        final var cubes = new long[threeAdicModulus];
+        for (int z = 0; z < threeAdicModulus; z++) {
+            cubes[z] = (long) z * z * z % threeAdicModulus;
+        }
+        for (int r = 0; r < threeAdicModulus; r++) {
+            // Values of x^3 + y^3 = s^3 - 3sx(s - x) with x + y = s, for s = +-d.
+            final var sums = new boolean[threeAdicModulus];
+            for (var s : new long[]{r, threeAdicModulus - r}) {
+                for (long x = 0; x < threeAdicModulus; x++) {
+                    sums[(int) Math.floorMod(s * s * s - 3 * s * x * (s - x), threeAdicModulus)] = true;
+                }
+            }
+            final var even = new ArrayList<Long>();
+            final var odd = new ArrayList<Long>();
+            for (int z = 0; z < threeAdicModulus; z++) {
+                if (!sums[Math.floorMod(k - (int) cubes[z], threeAdicModulus)]) continue;
+                even.add((long) z);
+                // The lift of z mod 243 to 486 with z = k + 1 mod 2.
+                odd.add((long) ((z & 1) == ((k + 1) & 1) ? z : z + threeAdicModulus));
+            }
+            evenD.add(List.copyOf(even));
+            oddD.add(List.copyOf(odd));
+        }
+    }
+
+    static AdmissibleResidues of(int k) {
+        return tables.computeIfAbsent(k, AdmissibleResidues::new);
+    }
+
+    // q, which is coprime to d.
+    static long modulus(long d) {
+        final var twoAdic = (d & 1) == 1 ? 2 : 1;
+        return d % 3 == 0 ? twoAdic : twoAdic * threeAdicModulus;
+    }
+
+    // A_d(q), with q = `modulus(d)`.
+    List<Long> residues(long d) {
+        if (d % 3 == 0) return (d & 1) == 1 ? List.of((long) ((k + 1) & 1)) : List.of(0L);
+        final var r = (int) (d % threeAdicModulus);
+        return (d & 1) == 1 ? oddD.get(r) : evenD.get(r);
+    }
+}
@@ -0,0 +1,71 @@
+package org.cliu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Picks c0, c1 and c2 for each bucket of d, as the best constants depend on the size of d, on k and on zMax. For each
+ * bucket, a few d0s from the middle of the bucket are planned with every candidate constants, and the time to check all
+ * their z on a thread is estimated from the planning time and a short timed scan, like `CostModel.dryRun` does. The
+ * constants with the least total time, i.e. the most z covered per second, win.
+ */
+public class Autotuner {
+    static final long[] c0s = {2, 4, 8};
+    static final long[] c1s = {25, 50, 100};
+    static final long[] c2s = {3, 6, 12, 18};
+    // Number of z scanned to measure the speed of a plan.
+    static final long trialSteps = 1 << 20;
+
+    public static TuningProfile tune(int k, long zMax, long dMin, long dMax, int samplesPerBucket) {
+        final var byBucket = new TreeMap<Integer, Models.PlanConstants>();
+        for (int bucket = TuningProfile.bucket(Math.max(dMin, 1)); bucket <= TuningProfile.bucket(dMax); bucket++) {
+            final var samples = samples(k, zMax, Math.max(dMin, 1L << bucket), Math.min(dMax, (1L << bucket) - 1 + (1L << bucket)), samplesPerBucket);
+            if (samples.isEmpty()) continue;
+            // Warms up the JIT, so that the first candidates aren't penalized.
+            trialSeconds(samples.get(0), k, zMax, new Models.PlanConstants(Constants.c0, Constants.c1, Constants.c2));
+
+            Models.PlanConstants best = null;
+            var bestSeconds = Double.MAX_VALUE;
+            for (var c0 : c0s) {
+                for (var c1 : c1s) {
+                    for (var c2 : c2s) {
+                        final var constants = new Models.PlanConstants(c0, c1, c2);
+                        var seconds = 0.0;
+                        for (var d0 : samples) {
+                            seconds += trialSeconds(d0, k, zMax, constants);
+                        }
+                        if (seconds < bestSeconds) {
+                            bestSeconds = seconds;
+                            best = constants;
+                        }
+                    }
+                }
+            }
+            System.out.println(String.format("Bucket 2^%s: %s, %.4g z covered per second", bucket, best, samples.size() * 2.0 * zMax / bestSeconds));
+            byBucket.put(bucket, best);
+        }
+        return new TuningProfile(k, zMax, byBucket);
+    }
+
+    // Estimated seconds for a thread to check all the z of d0: planning, then the expected work at the measured speed.
+    static double trialSeconds(Models.NumberAndFactors d0, int k, long zMax, Models.PlanConstants constants) {
+        final var start = System.nanoTime();
+        final var plan = Runner.plan(d0, k, zMax, constants.c0(), constants.c1(), constants.c2());
+        final var planSeconds = (System.nanoTime() - start) / 1e9;
+        final var work = CostModel.expectedWork(plan);
+        return work == 0 ? planSeconds : planSeconds + work / CostModel.calibrate(plan, trialSteps);
+    }
+
+    // The first d0s from the middle of [min, max] that have any z to check at all.
+    private static List<Models.NumberAndFactors> samples(int k, long zMax, long min, long max, int count) {
+        final var samples = new ArrayList<Models.NumberAndFactors>();
+        if (min > max) return samples;
+        final var sieve = new SegmentedSieve(min + (max - min) / 2, max);
+        while (samples.size() < count && sieve.tryAdvance(d0 -> {
+            final var plan = Runner.plan(d0, k, zMax, Constants.c0, Constants.c1, Constants.c2);
+            if (Utils.crtEnumerationSize(plan.numberToResidues()) > 0) samples.add(d0);
+        })) {}
+        return samples;
+    }
+}
@@ -0,0 +1,80 @@
+package org.cliu;
+
+/**
+ * The S_d(p) filters of the aux primes, merged into wheels: the primes are grouped into products Q of at most
+ * `maxModulus`, e.g. 5 * 7 * 11 * 13 = 5005, and bit r of a group's bitset is set when r mod p passes S_d(p) for every
+ * p in the group. A z then takes one lookup of z mod Q per group instead of one per prime, and the bitsets of all the
+ * groups fit in L1.
+ *
+ * Like the per-prime tables, the bitsets depend on d mod p, d mod 3 and k, so they're built once per d.
+ */
+record AuxPrimeWheels(int[] moduli, long[][] bits, int[] increments, FastMod[] reducers) {
+    // 2 KB per bitset.
+    static final int maxModulus = 1 << 14;
+
+    // Groups `primesInB` in order, as long as the product stays at most maxModulus, so that the small primes, which
+    // reject the fewest z, share a wheel. `increments` hold multiplierM mod Q.
+    static AuxPrimeWheels of(int[] primesInB, long[][] ssubdCandidateLookupTable, long multiplierM) {
+        var groups = 0;
+        final var groupOf = new int[primesInB.length];
+        var modulus = 1L;
+        for (int i = 0; i < primesInB.length; i++) {
+            if (i > 0 && modulus * primesInB[i] > maxModulus) {
+                groups++;
+                modulus = 1;
+            }
+            modulus *= primesInB[i];
+            groupOf[i] = groups;
+        }
+        if (primesInB.length > 0) groups++;
+
+        final var moduli = new int[groups];
+        final var bits = new long[groups][];
+        final var increments = new int[groups];
+        final var reducers = new FastMod[groups];
+        for (int g = 0, from = 0; g < groups; g++) {
+            var to = from;
+            var q = 1;
+            for (; to < primesInB.length && groupOf[to] == g; to++) {
+                q *= primesInB[to];
+            }
+            moduli[g] = q;
+            bits[g] = wheel(primesInB, ssubdCandidateLookupTable, from, to, q);
+            increments[g] = (int) Math.floorMod(multiplierM, q);
+            reducers[g] = FastMod.of(q);
+            from = to;
+        }
+        return new AuxPrimeWheels(moduli, bits, increments, reducers);
+    }
+
+    // Bitset of the r mod q that pass S_d(p) for primesInB[from], ..., primesInB[to - 1], whose product is q.
+    private static long[] wheel(int[] primesInB, long[][] ssubdCandidateLookupTable, int from, int to, int q) {
+        final var words = new long[(q + 63) >>> 6];
+        // r mod p for each prime of the group, stepped along with r.
+        final var rModP = new int[to - from];
+        for (int r = 0; r < q; r++) {
+            var passes = 1L;
+            for (int i = from; i < to; i++) {
+                final var p = primesInB[i];
+                final var z = rModP[i - from];
+                passes &= ssubdCandidateLookupTable[p - 1][z >>> 6] >>> z;
+                if (++rModP[i - from] == p) rModP[i - from] = 0;
+            }
+            words[r >>> 6] |= (passes & 1) << r;
+        }
+        return words;
+    }
+
+    int size() {
+        return moduli.length;
+    }
+
+    // Whether a single z passes the S_d(p) filter of every aux prime.
+    boolean passes(long z) {
+        for (int g = 0; g < moduli.length; g++) {
+            final var r = reducers[g].floorMod(z);
+            if ((bits[g][r >>> 6] & (1L << r)) == 0) return false;
+        }
+        return true;
+    }
+}
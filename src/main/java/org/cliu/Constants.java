@@ -64,32 +64,6 @@ public class Constants {
         };
     }
 
-    public static long[][][][] getSsubDCache(int k, boolean isBitMaskCache) {
-        final var retval = new long[A.size()][251][3][];
-        for (int i=0;i<A.size();i++) {
-            for (int j=0;j<A.get(i);j++) {
-                var jModP = Math.floorMod(j, A.get(i));
-                long[] dMod3EqualsOneArray = new long[A.get(i)];
-                for (var isPositiveIdx: Utils.SsubdPComputation(jModP, 1, A.get(i), k)) {
-                    dMod3EqualsOneArray[isPositiveIdx.intValue()] = 1;
-                }
-
-                long[] dMod3EqualsTwoArray = new long[A.get(i)];
-                for (var isPositiveIdx : Utils.SsubdPComputation(jModP, 2, A.get(i), k)) {
-                    dMod3EqualsTwoArray[isPositiveIdx.intValue()] = 1;
-                }
-                if (isBitMaskCache) {
-                    retval[i][jModP][1] = dMod3EqualsOneArray;
-                    retval[i][jModP][2] = dMod3EqualsTwoArray;
-                } else {
-                    retval[i][jModP][1] = Utils.SsubdPComputation(jModP, 1, A.get(i), k).stream().mapToLong(l -> l).toArray();;
-                    retval[i][jModP][2] = Utils.SsubdPComputation(jModP, 2, A.get(i), k).stream().mapToLong(l -> l).toArray();
-                }
-            }
-        }
-        return retval;
-    }
-
     // Epsilon, c0, c1, c2, zMax are constants in the algorithm.
     static long getEps(long k) {
         // k congruent 3*epsilon mod 9
@@ -0,0 +1,99 @@
+package org.cliu;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Instant;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.StreamSupport;
+
+/**
+ * Estimates the work of step 4 for a d without scanning. Each of the |Z_m| residues is walked in steps of m until
+ * |z| >= zMax, so step 4 checks about |Z_m| * zMax / m values of z. With m = d0 * q * a, this varies by orders of
+ * magnitude between the d0s that `Enumeration` produces.
+ */
+public class CostModel {
+    // Expected number of z that step 4 checks for a plan, as the residues are spread evenly over [0, m). Walking up
+    // from the residues covers each z in [0, zMax) once. Walking down covers [0, min(m, zMax)) and the z in
+    // (-zMax, 0) whose residue is below zMax, of which there are fewer than zMax once m > zMax.
+    static double expectedWork(Step4.Plan plan) {
+        final double m = plan.m(), zMax = plan.zMax();
+        final var covered = plan.lookups().multiplierM() < 0 ? Math.min(m, zMax) + Math.max(0, Math.min(zMax, 2 * zMax - m)) : zMax;
+        return Utils.crtEnumerationSize(plan.numberToResidues()) * covered / m;
+    }
+
+    // Measures how many z per second a single thread checks for a plan, over at most `steps` values of z.
+    static double calibrate(Step4.Plan plan, long steps) {
+        final var Zm = plan.crt().iterator(0, plan.crt().size());
+        final var multiplierM = plan.lookups().multiplierM();
+        final var sink = new SolutionSink.Collecting();
+        final var context = SearchContext.get();
+        var checked = 0L;
+        final var start = System.nanoTime();
+        while (Zm.hasNext() && checked < steps) {
+            final var z = Zm.nextLong();
+            final var toCheck = Math.min(Step4.progressionLength(z, multiplierM, plan.zMax()), steps - checked);
+            Step4.scanProgression(plan.d().number(), z, toCheck, plan.lookups(), plan.k(), sink, context);
+            checked += toCheck;
+        }
+        return checked / Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+    }
+
+    /**
+     * Dry run of `ParallelRunner.run`: runs steps 1-3 for every d0, and reports the total expected work of step 4 and
+     * how long it should take on `parallelism` threads, without scanning anything.
+     */
+    public static void dryRun(int parallelism, Models.SearchParameters params) {
+        final var primes = PrimeSource.first(Runner.numPrimes);
+        final var admissibility = new Admissibility(params.k(), primes, Runner.numPrimes);
+        final var pool = new ForkJoinPool(parallelism);
+        final var start = Instant.now();
+
+        final var totals = new DryRunTotals();
+        for (int i = Runner.numPrimes - 1; i >= 0; i--) {
+            final var prime = primes.prime(i);
+            final var partition = Enumeration.partition(Runner.dMin, Runner.dMax, primes, i, admissibility);
+            totals.combine(pool.submit(() -> StreamSupport.stream(partition, true)
+                    .map(d0 -> Runner.plan(d0, params))
+                    .collect(DryRunTotals::new, DryRunTotals::add, DryRunTotals::combine)).join());
+            if (i % 100000 == 0) {
+                System.out.println(String.format("Down to initial prime %s: %s d0s, %.4g z to check", prime, totals.d0s, totals.work));
+            }
+        }
+        pool.shutdown();
+
+        System.out.println(String.format("Planned %s d0s in %s seconds, %.4g z to check in total, at most %.4g for a single d0", totals.d0s, Instant.now().getEpochSecond() - start.getEpochSecond(), totals.work, totals.maxWork));
+        System.out.println(admissibility.stats());
+        if (null != totals.maxWorkPlan) {
+            final var zPerSecond = calibrate(totals.maxWorkPlan, 1 << 26);
+            final var etaSeconds = totals.work / (zPerSecond * parallelism);
+            System.out.println(String.format("Measured %.4g z/s per thread, ETA on %s threads: %.4g seconds (%.4g days)", zPerSecond, parallelism, etaSeconds, etaSeconds / 86400));
+        }
+    }
+
+    // Expected work of the plans seen so far, merged across the threads planning them.
+    private static class DryRunTotals {
+        long d0s;
+        double work;
+        double maxWork;
+        @Nullable Step4.Plan maxWorkPlan;
+
+        void add(Step4.Plan plan) {
+            final var planWork = expectedWork(plan);
+            d0s++;
+            work += planWork;
+            if (planWork > maxWork) {
+                maxWork = planWork;
+                maxWorkPlan = plan;
+            }
+        }
+
+        void combine(DryRunTotals other) {
+            d0s += other.d0s;
+            work += other.work;
+            if (other.maxWork > maxWork) {
+                maxWork = other.maxWork;
+                maxWorkPlan = other.maxWorkPlan;
+            }
+        }
+    }
+}
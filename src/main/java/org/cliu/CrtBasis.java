@@ -0,0 +1,133 @@
+package org.cliu;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import org.apache.commons.math3.util.Pair;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Z_m as the CRT combinations of the residues allowed mod each prime power of m. With the CRT basis e_i = 1 mod n_i
+ * and 0 mod the other moduli, z = sum r_i e_i mod m, so each residue r of axis i contributes a fixed term r e_i mod m.
+ * The terms are computed once per plan, and Z_m is walked in mixed-radix order, where moving to the next element
+ * changes one axis in most steps and costs a single modular addition, instead of a full CRT per element.
+ *
+ * The order is the same as the Cartesian product of the residues with the last axis changing fastest, so that the
+ * index ranges that `Step4` splits Z_m into stay the same.
+ */
+public class CrtBasis {
+    private final long modulus;
+    // Index of the first element, all axes with a single residue folded in.
+    private final long base;
+    // terms[i][j] = r_ij e_i mod m, and steps[i][j] = terms[i][j + 1] - terms[i][j] mod m, wrapping back to j = 0.
+    private final long[][] terms;
+    private final long[][] steps;
+    private final long size;
+
+    private CrtBasis(long modulus, long base, long[][] terms, long[][] steps, long size) {
+        this.modulus = modulus;
+        this.base = base;
+        this.terms = terms;
+        this.steps = steps;
+        this.size = size;
+    }
+
+    static CrtBasis of(Pair<Models.NumberAndPower, List<Long>>[] numberToResidues) {
+        var modulus = 1L;
+        var size = 1L;
+        var axes = 0;
+        for (var numberToResidue : numberToResidues) {
+            modulus *= numberToResidue.getFirst().numberToPower();
+            size *= numberToResidue.getSecond().size();
+            if (numberToResidue.getFirst().numberToPower() != 1 && numberToResidue.getSecond().size() > 1) axes++;
+        }
+
+        var base = 0L;
+        final var terms = new long[axes][];
+        final var steps = new long[axes][];
+        var axis = 0;
+        for (var numberToResidue : numberToResidues) {
+            final var n = numberToResidue.getFirst().numberToPower();
+            final var residues = numberToResidue.getSecond();
+            if (n == 1 || residues.isEmpty()) continue;
+            // e_i = (m / n) * ((m / n)^-1 mod n), and r e_i = (m / n) * (r (m / n)^-1 mod n) mod m, which can't overflow.
+            final var cofactor = modulus / n;
+            final var inverse = BigInteger.valueOf(cofactor % n).modInverse(BigInteger.valueOf(n)).longValueExact();
+            final var axisTerms = new long[residues.size()];
+            for (int j = 0; j < axisTerms.length; j++) {
+                axisTerms[j] = cofactor * mulMod(Math.floorMod(residues.get(j), n), inverse, n);
+            }
+            if (axisTerms.length == 1) {
+                base = addMod(base, axisTerms[0], modulus);
+                continue;
+            }
+            final var axisSteps = new long[axisTerms.length];
+            for (int j = 0; j < axisTerms.length; j++) {
+                axisSteps[j] = subtractMod(axisTerms[(j + 1) % axisTerms.length], axisTerms[j], modulus);
+            }
+            terms[axis] = axisTerms;
+            steps[axis] = axisSteps;
+            axis++;
+        }
+        return new CrtBasis(modulus, base, terms, steps, size);
+    }
+
+    long size() {
+        return size;
+    }
+
+    // The elements with index in [from, to).
+    LongIterator iterator(long from, long to) {
+        final var indices = new int[terms.length];
+        var z = base;
+        // The last axis changes fastest, so the index is a mixed-radix number with the last axis as lowest digit.
+        var rest = from;
+        for (int i = terms.length - 1; i >= 0; i--) {
+            indices[i] = (int) (rest % terms[i].length);
+            rest /= terms[i].length;
+            z = addMod(z, terms[i][indices[i]], modulus);
+        }
+        final var start = z;
+        return new LongIterator() {
+            long remaining = Math.max(0, Math.min(to, size) - from);
+            long next = start;
+
+            @Override
+            public long nextLong() {
+                if (remaining <= 0) throw new NoSuchElementException();
+                final var current = next;
+                remaining--;
+                // Carries into the next axis only when an axis wraps around, which is amortized O(1) as every axis
+                // has at least two residues.
+                for (int i = terms.length - 1; i >= 0; i--) {
+                    next = addMod(next, steps[i][indices[i]], modulus);
+                    if (++indices[i] < terms[i].length) break;
+                    indices[i] = 0;
+                }
+                return current;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+        };
+    }
+
+    // a + b mod m for a, b in [0, m), without overflowing when m > 2^62.
+    private static long addMod(long a, long b, long m) {
+        final var sum = a - (m - b);
+        return sum < 0 ? sum + m : sum;
+    }
+
+    private static long subtractMod(long a, long b, long m) {
+        final var difference = a - b;
+        return difference < 0 ? difference + m : difference;
+    }
+
+    private static long mulMod(long a, long b, long m) {
+        if (m <= 1L << 31) return a * b % m;
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(BigInteger.valueOf(m)).longValueExact();
+    }
+}
@@ -0,0 +1,113 @@
+package org.cliu;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * The cube roots of k mod primes p < 2^31, in one long per (k, p): the first two roots in bits 0-30 and 31-61, and
+ * their number, 0, 1 or 3, in bits 62-63. A third root is the opposite of the sum of the other two, as x^3 - k has no
+ * x^2 term.
+ *
+ * Roots are looked up, in order, in:
+ *   - the table `precompute` filled for k, for every prime up to a bound, so that the small primes, which most d share,
+ *     are never computed during the search.
+ *   - the `PrecomputedTables` mapped for k, if any.
+ *   - a direct-mapped cache of `cacheSlots` (k, p), shared by all the threads, where a new entry evicts whatever was in
+ *     its slot. It holds three longs per slot, so its memory is fixed whatever the number of k and p searched.
+ */
+public class CubeRoots {
+    static final int cacheSlots = 1 << 20;
+    // Primes up to this are precomputed for the k searched, about 1M of them.
+    static final long precomputeBound = 1 << 24;
+    // Slot i is a sequence number at 3i, the key at 3i + 1 and the packed roots at 3i + 2, with a key of 0 for an empty
+    // slot, as p > 0 in every key. The sequence number is odd while the slot is being written, and grows with every
+    // write.
+    private static final AtomicLongArray cache = new AtomicLongArray(3 * cacheSlots);
+    private static final ConcurrentHashMap<Integer, Precomputed> precomputed = new ConcurrentHashMap<>();
+
+    private record Precomputed(int[] primes, long[] packed) {}
+
+    private CubeRoots() {}
+
+    // The cube roots of k mod p, for a prime p.
+    static long[] of(long k, long p) {
+        return unpack(packed(k, p), p);
+    }
+
+    static long packed(long k, long p) {
+        final var table = k == (int) k ? precomputed.get((int) k) : null;
+        if (null != table) {
+            final var i = Arrays.binarySearch(table.primes, (int) p);
+            if (i >= 0) return table.packed[i];
+        }
+        final var tables = k == (int) k ? PrecomputedTables.saved((int) k) : null;
+        if (null != tables) {
+            final var i = tables.indexOf(p);
+            if (i >= 0) return tables.packedCubeRoots(i);
+        }
+        final var key = key(k, p);
+        final var slot = 3 * slot(key);
+        // A seqlock: the key and roots were written together if the sequence number was even and didn't change while
+        // reading them. Comparing the key alone wouldn't do, as other threads may have written the slot for another
+        // key, and back, in between.
+        final var sequence = cache.get(slot);
+        if ((sequence & 1) == 0 && cache.get(slot + 1) == key) {
+            final var packed = cache.get(slot + 2);
+            if (cache.get(slot) == sequence) return packed;
+        }
+        final var packed = pack(Utils.cuberootOfPrimeComputation(k, p));
+        // Threads that race on a slot don't wait for each other: only the one that makes its sequence number odd
+        // first writes it.
+        final var current = cache.get(slot);
+        if ((current & 1) == 0 && cache.compareAndSet(slot, current, current + 1)) {
+            cache.set(slot + 1, key);
+            cache.set(slot + 2, packed);
+            cache.set(slot, current + 2);
+        }
+        return packed;
+    }
+
+    /**
+     * Computes the roots of k mod every prime up to `bound` in parallel, once per k. Searches call this before
+     * planning any d, so that step 4 looks the roots of small primes up instead of computing them.
+     */
+    static void precompute(int k, long bound) {
+        precomputed.computeIfAbsent(k, key -> {
+            final var source = new PrimeSource(bound);
+            final var primes = source.range(0, source.pi(bound));
+            final var packed = new long[primes.length];
+            IntStream.range(0, primes.length).parallel().forEach(i -> packed[i] = pack(Utils.cuberootOfPrimeComputation(k, primes[i])));
+            return new Precomputed(primes, packed);
+        });
+    }
+
+    // The roots depend on k mod p as well as p, so that a process can search for several k. p < 2^31.
+    static long key(long k, long p) {
+        return p << 32 | (Math.floorMod(k, p) & 0xffffffffL);
+    }
+
+    private static int slot(long key) {
+        // Fibonacci hashing, as consecutive primes would otherwise fill every other slot.
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(cacheSlots)));
+    }
+
+    static long pack(long[] roots) {
+        final var count = (long) roots.length;
+        final var first = roots.length > 0 ? roots[0] : 0;
+        final var second = roots.length > 1 ? roots[1] : 0;
+        return count << 62 | second << 31 | first;
+    }
+
+    static long[] unpack(long packed, long p) {
+        final var count = (int) (packed >>> 62);
+        final var first = packed & 0x7fffffffL;
+        final var second = packed >>> 31 & 0x7fffffffL;
+        return switch (count) {
+            case 0 -> new long[0];
+            case 1 -> new long[]{first};
+            default -> new long[]{first, second, Math.floorMod(-first - second, p)};
+        };
+    }
+}
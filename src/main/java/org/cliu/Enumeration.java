@@ -1,8 +1,9 @@
 package org.cliu;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 public class Enumeration {
     // Recursively enumerate all positive integers using prime powers. Each prime must be congruent to 0 mod 3.
@@ -20,43 +21,153 @@ public class Enumeration {
 //        return acc;
 //    }
 
-    // Same as above recursion, but using iteration.
-    static List<Models.NumberAndFactors> nSmoothEnumerationIteration(long min, long max, long[] primes, Models.NumberAndFactors initialNumber, int maxNum, int startIdx) {
-        final var minB = BigInteger.valueOf(min);
-        final var maxB = BigInteger.valueOf(max);
-        final var acc = new ArrayList<Models.NumberAndFactors>();
-        if (initialNumber.number() > min && initialNumber.number() < max) acc.add(initialNumber);
-
-        List<Models.NumberAndFactors> candidates = new ArrayList<>();
-        candidates.add(initialNumber);
-
-        for (int i=startIdx;i>=0;i--) {
-            if (primes[i] % 3 ==0
-                    // HACK: This approach didn't seem to scale and OOM'ed without this filter.
-                    || primes[i] < 30) continue;
-            List<Models.NumberAndFactors> newCandidates = new ArrayList<>();
-            for (var n : candidates) {
-                var jNumber = n.copy();
-                while(true) {
-                    final var nextCandidate = Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(jNumber.number(),primes[i]);
-
-                    jNumber.multiplyMutable(primes[i]);
-                    if (-1 == nextCandidate || nextCandidate > max) break;
-
-                    if (i == 0 || (-1 != Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(nextCandidate, primes[i-1]) && Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(nextCandidate, primes[i-1]) < max))
-                        newCandidates.add(jNumber.copy());
-                    if (nextCandidate > min) {
-                        acc.add(jNumber.copy());
-                    }
-                    if (acc.size() >= maxNum)  {
-                        return acc;
-                    }
+    // All the d0s whose largest prime factor is primes[i] for an i in [primeIdxFrom, primeIdxTo), from the largest
+    // of these primes down like `Runner.run`.
+    static Spliterator<Models.NumberAndFactors> smoothNumbers(long min, long max, PrimeSource primes, int primeIdxFrom, int primeIdxTo) {
+        return new SmoothNumbers(min, max, primes, primeIdxFrom, primeIdxTo, null);
+    }
+
+    // Same as above, without the numbers that can't be admissible for the k of `admissibility`.
+    static Spliterator<Models.NumberAndFactors> smoothNumbers(long min, long max, PrimeSource primes, int primeIdxFrom, int primeIdxTo, Admissibility admissibility) {
+        return new SmoothNumbers(min, max, primes, primeIdxFrom, primeIdxTo, admissibility);
+    }
+
+    // The largest-prime partition of the admissible d0s with largest prime factor primes[primeIdx].
+    static Spliterator<Models.NumberAndFactors> partition(long min, long max, PrimeSource primes, int primeIdx, Admissibility admissibility) {
+        return new SmoothNumbers(min, max, primes, primeIdx, primeIdx + 1, admissibility);
+    }
+
+    /**
+     * Lazily enumerates the numbers in (min, max] without a factor 3, whose prime factors are taken from `primes`.
+     *
+     * These numbers form a tree: the children of n = p_1 * ... * p_j, with p_1 >= ... >= p_j, are the n * p <= max
+     * for primes p <= p_j. The tree is walked depth first with an explicit stack, so memory use grows with the depth
+     * of the tree, which is at most log2(max), rather than with the number of values enumerated. Splitting hands off
+     * half of the children left at the lowest node of the stack that has at least two left.
+     *
+     * When given an `Admissibility`, children with a prime power that has no cube root of k are skipped along with
+     * their whole subtree, as all their multiples in the tree keep that prime power or a higher one.
+     */
+    static class SmoothNumbers implements Spliterator<Models.NumberAndFactors> {
+        // Every number at depth j is at least 2^j.
+        private static final int maxDepth = 64;
+
+        private final long min;
+        private final long max;
+        private final PrimeSource primes;
+        @Nullable private final Admissibility admissibility;
+        // The nodes on the path from the root 1 to the current node: the number, the index of its last prime factor,
+        // its power, and the prime indices [lowIdx, nextIdx] of the children left to visit, from nextIdx down.
+        private final long[] numbers = new long[maxDepth];
+        private final int[] primeIdx = new int[maxDepth];
+        private final int[] powers = new int[maxDepth];
+        private final int[] lowIdx = new int[maxDepth];
+        private final int[] nextIdx = new int[maxDepth];
+        private int depth;
+        // Depth of the node this spliterator was split off at. The nodes below it are only kept for their factors.
+        private final int floor;
+
+        SmoothNumbers(long min, long max, PrimeSource primes, int primeIdxFrom, int primeIdxTo, @Nullable Admissibility admissibility) {
+            this.min = min;
+            this.max = max;
+            this.primes = primes;
+            this.admissibility = admissibility;
+            this.numbers[0] = 1;
+            this.primeIdx[0] = -1;
+            this.lowIdx[0] = primeIdxFrom;
+            this.nextIdx[0] = largestPrimeIdx(max, primeIdxTo - 1);
+            this.depth = 0;
+            this.floor = 0;
+        }
+
+        private SmoothNumbers(SmoothNumbers parent, int floor, int lowIdx, int nextIdx) {
+            this.min = parent.min;
+            this.max = parent.max;
+            this.primes = parent.primes;
+            this.admissibility = parent.admissibility;
+            System.arraycopy(parent.numbers, 0, this.numbers, 0, floor + 1);
+            System.arraycopy(parent.primeIdx, 0, this.primeIdx, 0, floor + 1);
+            System.arraycopy(parent.powers, 0, this.powers, 0, floor + 1);
+            this.lowIdx[floor] = lowIdx;
+            this.nextIdx[floor] = nextIdx;
+            this.depth = floor;
+            this.floor = floor;
+        }
+
+        // Largest i <= hi with primes[i] <= bound, or -1.
+        private int largestPrimeIdx(long bound, int hi) {
+            if (hi < 0) return -1;
+            return Math.min(hi, primes.indexOfLargestAtMost(bound));
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Models.NumberAndFactors> action) {
+            while (depth >= floor) {
+                final var i = nextIdx[depth];
+                if (i < lowIdx[depth]) {
+                    depth--;
+                    continue;
+                }
+                nextIdx[depth] = i - 1;
+                final var prime = primes.prime(i);
+                if (prime % 3 == 0) continue;
+                final var power = primeIdx[depth] == i ? powers[depth] + 1 : 1;
+                if (null != admissibility && !admissibility.isAdmissible(i, prime, power)) continue;
+
+                // Can't overflow, as children are only visited when number * prime <= max.
+                final var number = numbers[depth] * prime;
+                depth++;
+                numbers[depth] = number;
+                primeIdx[depth] = i;
+                powers[depth] = power;
+                lowIdx[depth] = 0;
+                nextIdx[depth] = largestPrimeIdx(max / number, i);
+                if (number > min) {
+                    action.accept(factors(number));
+                    return true;
                 }
             }
-            candidates.addAll(newCandidates);
+            return false;
         }
-        return acc;
-    }
-}
 
+        // The current node, whose prime factors are the primes along its path, in decreasing order.
+        private Models.NumberAndFactors factors(long number) {
+            var size = 0;
+            for (int j = 1; j <= depth; j++) {
+                if (primeIdx[j] != primeIdx[j - 1]) size++;
+            }
+            final var factors = new long[size];
+            size = 0;
+            for (int j = 1; j <= depth; ) {
+                final var idx = primeIdx[j];
+                var power = 0;
+                for (; j <= depth && primeIdx[j] == idx; j++) power++;
+                factors[size++] = Models.NumberAndFactors.pack((int) primes.prime(idx), power);
+            }
+            return new Models.NumberAndFactors(number, factors, size);
+        }
 
+        @Override
+        @Nullable
+        public Spliterator<Models.NumberAndFactors> trySplit() {
+            for (int f = floor; f <= depth; f++) {
+                if (nextIdx[f] - lowIdx[f] < 1) continue;
+                final var mid = lowIdx[f] + (nextIdx[f] - lowIdx[f]) / 2;
+                final var split = new SmoothNumbers(this, f, mid + 1, nextIdx[f]);
+                nextIdx[f] = mid;
+                return split;
+            }
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.cliu;
+
+/**
+ * floorMod by a fixed small modulus p without a 64-bit division, for when z jumps around rather than stepping by a
+ * known amount, e.g. at the start of each progression in step 4.
+ *
+ * Barrett reduction with the precomputed M = floor((2^64 - 1) / p): for 0 <= x < 2^63, q = floor(x * M / 2^64) is
+ * floor(x / p) or one less, so x - q * p only needs a single conditional subtract. Negative x are reduced through
+ * -x - 1, which is never negative.
+ */
+final class FastMod {
+    private final int p;
+    private final long m;
+
+    private FastMod(int p) {
+        this.p = p;
+        this.m = Long.divideUnsigned(-1L, p);
+    }
+
+    static FastMod of(int p) {
+        if (p < 2) throw new IllegalArgumentException("modulus must be at least 2: " + p);
+        return new FastMod(p);
+    }
+
+    // Same as Math.floorMod(x, p).
+    int floorMod(long x) {
+        if (x >= 0) return reduce(x);
+        return p - 1 - reduce(-1 - x);
+    }
+
+    // For x >= 0. M < 2^63 as p >= 2, so the signed high product is the unsigned one.
+    private int reduce(long x) {
+        var r = x - Math.multiplyHigh(x, m) * p;
+        if (r >= p) r -= p;
+        return (int) r;
+    }
+}
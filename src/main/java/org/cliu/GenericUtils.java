@@ -1,6 +1,7 @@
 package org.cliu;
 
 import com.google.common.math.BigIntegerMath;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.math.BigInteger;
 import java.math.RoundingMode;
@@ -10,10 +11,13 @@ import static java.math.BigInteger.TWO;
 import static java.math.BigInteger.ZERO;
 
 public class GenericUtils {
-    static long goodMask; // 0xC840C04048404040 computed below
-    {
-        for (int i = 0; i < 64; ++i) GenericUtils.goodMask |= Long.MIN_VALUE >>> (i * i);
-    };
+    // Bit 63 - r is set for the squares r mod 64, so that x can only be a square if goodMask << x is negative.
+    static final long goodMask; // 0xC840C04048404040 computed below
+    static {
+        var mask = 0L;
+        for (int i = 0; i < 64; ++i) mask |= Long.MIN_VALUE >>> (i * i);
+        goodMask = mask;
+    }
 
     // Sourced and adapted from https://github.com/randombit/botan/blob/c32ac80d130be64ce5357b29a5fa82cad7aa2564/src/lib/math/numbertheory/mod_inv.cpp#L27-L90
     // Adapted from C++ to Java.
@@ -265,18 +269,31 @@ public class GenericUtils {
     // Algorithm 3.5's last step requires checking for candidate squares for a function of (d,z) and
     // a given `k`. If square, then we've found a new sum-of-cubes.
     public static boolean isSquareCandidate(long d, long z, int k) {
-        var threed = BigInteger.valueOf(3 * d);
-        var zcubed = BigInteger.valueOf(z).pow(3);
-        var dcubed = BigInteger.valueOf(d).pow(3);
-        var absKMinusZCubed = BigInteger.valueOf(k).subtract(zcubed).abs();
-        var candidate = threed.multiply(
-                (BigInteger.valueOf(4).multiply(absKMinusZCubed)).subtract(dcubed)
-        );
-        // REMARK: Any optimization needs to be using BigInt as the number can very well be greater than
-        // a max Long.
-//        var isSquareBigInt = candidate.signum() == 1 && candidate.sqrtAndRemainder()[1].equals(ZERO);
-//        return isSquareBigInt;
-        return candidate.signum() == 1 && (BigIntegerMath.sqrt(candidate, RoundingMode.FLOOR).pow(2).equals(candidate));
+        return SquareCheck.isSquareCandidate(d, z, k);
+    }
+
+    // Recovers x and y for a (d, z) that passed `isSquareCandidate`. With s the sign of k - z^3, we have x + y = sd,
+    // and x^3 + y^3 = (x + y)((x + y)^2 - 3xy) = k - z^3 gives (x - y)^2 = 3d(4|k - z^3| - d^3) / (3d)^2.
+    // Returns null when these have no integer solution.
+    @Nullable
+    public static Models.Solution recoverSolution(long d, long z, int k) {
+        final var kB = BigInteger.valueOf(k);
+        final var zB = BigInteger.valueOf(z);
+        final var dB = BigInteger.valueOf(d);
+        final var kMinusZCubed = kB.subtract(zB.pow(3));
+        final var candidate = dB.multiply(BigInteger.valueOf(3)).multiply(
+                BigInteger.valueOf(4).multiply(kMinusZCubed.abs()).subtract(dB.pow(3)));
+        if (candidate.signum() < 0) return null;
+        final var sqrtAndRemainder = BigIntegerMath.sqrt(candidate, RoundingMode.FLOOR);
+        final var threeD = dB.multiply(BigInteger.valueOf(3));
+        if (!sqrtAndRemainder.pow(2).equals(candidate) || sqrtAndRemainder.mod(threeD).signum() != 0) return null;
+        final var xMinusY = sqrtAndRemainder.divide(threeD);
+        final var xPlusY = kMinusZCubed.signum() < 0 ? dB.negate() : dB;
+        if (xPlusY.add(xMinusY).testBit(0)) return null;
+        final var x = xPlusY.add(xMinusY).shiftRight(1);
+        final var y = xPlusY.subtract(xMinusY).shiftRight(1);
+        if (!x.pow(3).add(y.pow(3)).add(zB.pow(3)).equals(kB)) return null;
+        return new Models.Solution(k, d, z, x, y);
     }
 
     static long legendreSymbol(long n, long p) {
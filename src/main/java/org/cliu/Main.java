@@ -2,10 +2,67 @@ package org.cliu;
 
 import jvm_alloc_rate_meter.MeterThread;
 
+import java.nio.file.Path;
+import java.util.Spliterators;
+
 class Main {
     public static void main(String[] args) {
 //        MeterThread t = new MeterThread((r) -> System.out.println("Rate is: " + (r / 1e6) + " MB/sec"));
 //        t.start();
-        Runner.run();
+        final var mode = args.length > 0 ? args[0] : "parallel";
+        final var params = tunedParameters(Runner.k);
+        switch (mode) {
+            case "serial" -> Runner.run(params);
+            // parallel [threads] [journal]: starts a new search, recording progress to the journal if one is given.
+            case "parallel" -> {
+                final var threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+                if (args.length > 2) {
+                    try (var journal = ProgressJournal.open(Path.of(args[2]), params, false)) {
+                        ParallelRunner.run(threads, params, journal);
+                    }
+                } else {
+                    ParallelRunner.run(threads, params, null);
+                }
+            }
+            // resume <journal> [threads]: continues a search, skipping all the work recorded in the journal.
+            case "resume" -> {
+                final var threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+                try (var journal = ProgressJournal.open(Path.of(args[1]), params, true)) {
+                    ParallelRunner.run(threads, params, journal);
+                }
+            }
+            // pipeline [threads]: prepares the d ahead on producer threads, with one thread per core scanning Z_m.
+            case "pipeline" -> PipelinedRunner.run(args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors(), params);
+            // window <dMin> <dMax> [threads]: searches the d0 in [dMin, dMax] from a segmented sieve, like `pipeline`,
+            // except those with a prime factor above 2^31, which are counted and reported as skipped.
+            case "window" -> {
+                final var sieve = new SegmentedSieve((long) Double.parseDouble(args[1]), (long) Double.parseDouble(args[2]));
+                PipelinedRunner.run(Spliterators.iterator(sieve), params, args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors());
+                System.out.println(String.format("Skipped %s d0s with a prime factor above 2^31", sieve.skippedLargePrimes()));
+            }
+            // dryrun [threads]: reports the expected work and ETA of the `parallel` mode, without scanning.
+            case "dryrun" -> CostModel.dryRun(args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors(), params);
+            // autotune [samples per bucket]: picks c0, c1 and c2 for each bucket of d, and saves them for the other modes.
+            case "autotune" -> {
+                final var profile = Autotuner.tune(Runner.k, Constants.zMax, Runner.dMin, Runner.dMax, args.length > 1 ? Integer.parseInt(args[1]) : 8);
+                profile.save(TuningProfile.defaultPath(Runner.k));
+                System.out.println(String.format("Saved %s to %s", profile, TuningProfile.defaultPath(Runner.k)));
+            }
+            // tables [primes]: precomputes the S_d(p) tables and the cube roots of k mod the first primes, for every mode to map.
+            case "tables" -> {
+                PrecomputedTables.write(PrecomputedTables.defaultPath(Runner.k), Runner.k, args.length > 1 ? (int) Double.parseDouble(args[1]) : (int) 1e7);
+                System.out.println(String.format("Saved %s", PrecomputedTables.open(PrecomputedTables.defaultPath(Runner.k))));
+            }
+            // coordinator <queue dir> <units>: splits the search into units for workers to claim.
+            case "coordinator" -> WorkQueue.create(Path.of(args[1]), Runner.k, Runner.numPrimes, Integer.parseInt(args[2]));
+            // worker <queue dir> [threads]: claims and searches units until none are left.
+            case "worker" -> new WorkQueue(Path.of(args[1])).work(args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors(), Main::tunedParameters);
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    // The default constants, with the tuning profile saved for k in the working directory if there's one for zMax.
+    private static Models.SearchParameters tunedParameters(int k) {
+        return Models.SearchParameters.defaults(k).withProfile(TuningProfile.saved(k, Constants.zMax));
     }
 }
@@ -1,16 +1,9 @@
 package org.cliu;
 
-import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
-import it.unimi.dsi.fastutil.ints.Int2IntMap;
-import it.unimi.dsi.fastutil.ints.Int2IntMaps;
-import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectIterable;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
-import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.math.BigInteger;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Models {
 
@@ -19,40 +12,98 @@ public class Models {
     public static class NumberAndFactors {
         public long number;
 
-        // Use fastutil for memory efficiency: reduces allocation
-        // frequency significantly as compared to a regular HashMap.
-        public Int2IntMap primeFactors;
+        // REMARK: Each prime factor and its power are packed as (prime << 8) | power into a single long, in the order
+        // the primes were first multiplied in. This avoids maps of boxed values, and the allocations that come with
+        // them, as enumeration creates hundreds of millions of these.
+        private long[] factors;
+        private int size;
 
-        public NumberAndFactors(long number, Int2IntMap primeFactors){
+        // Takes the prime factors as pairs of a prime and its power, e.g. (167, 1, 649095133, 1).
+        public NumberAndFactors(long number, int... primesAndPowers) {
             this.number = number;
-            this.primeFactors = primeFactors;
+            this.factors = new long[primesAndPowers.length / 2];
+            for (int i = 0; i < primesAndPowers.length; i += 2) {
+                this.factors[this.size++] = pack(primesAndPowers[i], primesAndPowers[i + 1]);
+            }
+        }
+
+        NumberAndFactors(long number, long[] factors, int size) {
+            this.number = number;
+            this.factors = factors;
+            this.size = size;
+        }
+
+        static long pack(int prime, int power) {
+            return ((long) prime << 8) | power;
         }
 
         public long number() {
             return this.number;
         }
 
-        public Int2IntMap primeFactors() {
-            return this.primeFactors;
+        // Number of distinct prime factors.
+        public int size() {
+            return this.size;
         }
 
-        public ObjectIterable<Int2IntMap.Entry> fastIter() {
-            return Int2IntMaps.fastIterable(this.primeFactors);
+        public int prime(int i) {
+            return (int) (this.factors[i] >>> 8);
+        }
+
+        public int power(int i) {
+            return (int) (this.factors[i] & 0xFF);
+        }
+
+        public int[] primes() {
+            final var primes = new int[this.size];
+            for (int i = 0; i < this.size; i++) {
+                primes[i] = prime(i);
+            }
+            return primes;
+        }
+
+        // Power of `prime` in this number, 0 if it's not a factor.
+        public int powerOf(int prime) {
+            final var i = indexOf(prime);
+            return i < 0 ? 0 : power(i);
+        }
+
+        public int largestPrime() {
+            var largest = 0;
+            for (int i = 0; i < this.size; i++) {
+                largest = Math.max(largest, prime(i));
+            }
+            return largest;
+        }
+
+        public boolean hasFactor(int prime) {
+            return indexOf(prime) >= 0;
+        }
+
+        private int indexOf(int prime) {
+            for (int i = 0; i < this.size; i++) {
+                if (prime(i) == prime) return i;
+            }
+            return -1;
         }
 
         @Override
         public String toString() {
-            return ToStringBuilder.reflectionToString(this);
+            final var builder = new StringBuilder().append(this.number).append('{');
+            for (int i = 0; i < this.size; i++) {
+                if (i > 0) builder.append(", ");
+                builder.append(prime(i)).append('^').append(power(i));
+            }
+            return builder.append('}').toString();
         }
 
         @Nullable
         public NumberAndFactors multiply(long prime) {
             final var numberTimesPrime = NumberAndFactors.multiplyPositivesOrReturnNegativeOne(this.number, prime);
             if (numberTimesPrime == -1L) return null;
-            final var newPrimeFactors = new Int2IntArrayMap(this.primeFactors);
-            final var primeAsInt = Long.valueOf(prime).intValue();
-            newPrimeFactors.compute(primeAsInt, (key, val) -> (null == val ? 0:val) + 1);
-            return new NumberAndFactors(numberTimesPrime, newPrimeFactors);
+            final var result = new NumberAndFactors(numberTimesPrime, Arrays.copyOf(this.factors, this.size + 1), this.size);
+            result.addFactor((int) prime);
+            return result;
         }
 
         // Some code taken from `Math.multiplyExact`, but instead of throwing an exception, we return
@@ -74,15 +125,66 @@ public class Models {
         // Multiple the model by `prime` and set this model's current state to that value.
         // This is useful to avoid the creation and subsequent of garbage collection of values.
         public void multiplyMutable(long prime) {
-            this.primeFactors.compute((int)prime, (key, val) -> (null == val ? 0:val) + 1);
+            addFactor((int) prime);
             this.number = NumberAndFactors.multiplyPositivesOrReturnNegativeOne(this.number, prime);
         }
+
+        private void addFactor(int prime) {
+            final var i = indexOf(prime);
+            if (i >= 0) {
+                this.factors[i]++;
+                return;
+            }
+            if (this.size == this.factors.length) {
+                this.factors = Arrays.copyOf(this.factors, Math.max(2 * this.size, 4));
+            }
+            this.factors[this.size++] = pack(prime, 1);
+        }
+
         public NumberAndFactors copy() {
-            return new NumberAndFactors(this.number, new Int2IntOpenHashMap(this.primeFactors));
+            return new NumberAndFactors(this.number, Arrays.copyOf(this.factors, this.size), this.size);
+        }
+
+        // Sets this model to the value of `other`, reusing this model's storage when it's large enough.
+        public void copyFrom(NumberAndFactors other) {
+            this.number = other.number;
+            if (this.factors.length < other.size) {
+                this.factors = new long[other.size];
+            }
+            System.arraycopy(other.factors, 0, this.factors, 0, other.size);
+            this.size = other.size;
         }
     }
 
     // A small model representing a number, the power it is raised by, and the value from raising to that power.
     // This is useful to represent prime powers in a concise and easy to lookup fashion.
     public record NumberAndPower(long number, int power, long numberToPower) {}
+
+    // A solution x^3 + y^3 + z^3 = k, along with the d = |x + y| for which it was found.
+    public record Solution(int k, long d, long z, BigInteger x, BigInteger y) {}
+
+    // The constants of Algorithm 3.5 that decide how far steps 2 and 3 bump up m for a d.
+    public record PlanConstants(long c0, long c1, long c2) {}
+
+    // The `k` being searched for, along with the constants of Algorithm 3.5 that decide which `z` get checked for a d.
+    // When there's a tuning profile, it overrides the constants for the d buckets it has been tuned for.
+    public record SearchParameters(int k, long zMax, long c0, long c1, long c2, @Nullable TuningProfile profile) {
+        public SearchParameters(int k, long zMax, long c0, long c1, long c2) {
+            this(k, zMax, c0, c1, c2, null);
+        }
+
+        // The constants of `Constants`, without a tuning profile.
+        public static SearchParameters defaults(int k) {
+            return new SearchParameters(k, Constants.zMax, Constants.c0, Constants.c1, Constants.c2);
+        }
+
+        public SearchParameters withProfile(@Nullable TuningProfile profile) {
+            return new SearchParameters(k, zMax, c0, c1, c2, profile);
+        }
+
+        public PlanConstants constantsFor(long d) {
+            final var fallback = new PlanConstants(c0, c1, c2);
+            return null == profile ? fallback : profile.constantsFor(d, fallback);
+        }
+    }
 }
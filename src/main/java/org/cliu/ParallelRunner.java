@@ -0,0 +1,238 @@
+package org.cliu;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-core version of `Runner.run`. Steps 1-4 of Algorithm 3.5 are independent for each d0, so we run many d0s
+ * at once on a work-stealing fork/join pool.
+ *
+ * The largest-prime partitions are wildly unbalanced in size: those for large primes only hold a handful of d0s,
+ * while those for small primes hold millions. We therefore merge small partitions into batches of at least
+ * `minBatchSize` d0s, and recursively split each batch in halves of about the same expected work (see `CostModel`)
+ * so idle threads can steal work.
+ *
+ * When given a `ProgressJournal`, finished d0s and partitions are recorded, and those already recorded are skipped.
+ */
+public class ParallelRunner {
+    // Smallest number of d0s handed to the pool at once.
+    static final int minBatchSize = 1 << 14;
+    // Steps 1-3 for a batch are split in halves until at most this many d0s are left in a task.
+    static final int leafSize = 8;
+
+    // Progress and solutions merged across all threads. Solutions are printed and journaled as soon as they're found.
+    static class Progress implements SolutionSink {
+        final LongAdder checked = new LongAdder();
+        final ConcurrentLinkedQueue<Models.Solution> found = new ConcurrentLinkedQueue<>();
+        // Set to stop the run early, e.g. when a worker lost its unit. Scans stop at their next check of `isDone`, the
+        // d0s not yet planned or scanned are skipped, and no d0 or partition is marked done from then on.
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        @Nullable private final ProgressJournal journal;
+
+        Progress() {
+            this(null);
+        }
+
+        Progress(@Nullable ProgressJournal journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        public void accept(Models.Solution solution) {
+            System.out.println(String.format("FOUND SOLUTION!! %s", solution));
+            found.add(solution);
+            if (null != journal) journal.markSolution(solution.toString());
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled.get();
+        }
+    }
+
+    public static Progress run() {
+        return run(Runtime.getRuntime().availableProcessors(), Models.SearchParameters.defaults(Runner.k), null);
+    }
+
+    public static Progress run(int parallelism, Models.SearchParameters params, @Nullable ProgressJournal journal) {
+        return run(parallelism, new Progress(journal), params, 0, Runner.numPrimes);
+    }
+
+    // Only searches the partitions whose largest prime has index in [primeIdxFrom, primeIdxTo). Reports to `progress`,
+    // which can be cancelled from another thread while this runs.
+    public static Progress run(int parallelism, Progress progress, Models.SearchParameters params, int primeIdxFrom, int primeIdxTo) {
+        final var k = params.k();
+        final var journal = progress.journal;
+        final var primes = PrimeSource.first(primeIdxTo);
+        final var admissibility = new Admissibility(k, primes, primeIdxTo);
+        CubeRoots.precompute(k, CubeRoots.precomputeBound);
+        final var pool = new ForkJoinPool(parallelism);
+        final var start = Instant.now();
+        System.out.println(String.format("Searching k=%s with %s threads", k, parallelism));
+
+        // While the pool works on one batch, the next batch is enumerated on this thread. At most two batches are
+        // held in memory at once. Large partitions are cut into several batches, and a partition is only marked done
+        // along with the batch holding its last d0s.
+        ForkJoinTask<?> inFlight = null;
+        var inFlightPartitions = new IntArrayList();
+        var batch = new ArrayList<Models.NumberAndFactors>();
+        var batchPartitions = new IntArrayList();
+        partitions:
+        for (int i = primeIdxTo - 1; i >= primeIdxFrom && !progress.cancelled.get(); i--) {
+            final var prime = (int) primes.prime(i);
+            if (null != journal && journal.isPartitionDone(prime)) continue;
+            final var partition = Enumeration.partition(Runner.dMin, Runner.dMax, primes, i, admissibility);
+            while (true) {
+                while (batch.size() < minBatchSize && partition.tryAdvance(batch::add)) {}
+                final var isPartitionDone = batch.size() < minBatchSize;
+                if (isPartitionDone) {
+                    batchPartitions.add(prime);
+                    if (i > primeIdxFrom) break;
+                }
+
+                if (null != inFlight) {
+                    inFlight.join();
+                    if (progress.cancelled.get()) break partitions;
+                    markPartitionsDone(journal, inFlightPartitions);
+                    report(progress, start);
+                }
+                inFlight = pool.submit(new D0Task(batch, 0, batch.size(), params, progress, journal));
+                inFlightPartitions = batchPartitions;
+                System.out.println(String.format("Submitted %s d0s, down to initial prime: %s", batch.size(), prime));
+                batch = new ArrayList<>();
+                batchPartitions = new IntArrayList();
+                if (isPartitionDone) break;
+            }
+        }
+        if (null != inFlight) {
+            inFlight.join();
+            if (!progress.cancelled.get()) markPartitionsDone(journal, inFlightPartitions);
+        }
+        pool.shutdown();
+        report(progress, start);
+        System.out.println(String.format("%s, solutions found: %s, %s", progress.cancelled.get() ? "Cancelled" : "Finished", progress.found, admissibility.stats()));
+        return progress;
+    }
+
+    private static void markPartitionsDone(@Nullable ProgressJournal journal, IntArrayList partitions) {
+        if (null == journal) return;
+        for (int i = 0; i < partitions.size(); i++) {
+            journal.markPartitionDone(partitions.getInt(i));
+        }
+    }
+
+    private static void report(Progress progress, Instant start) {
+        final var timeTaken = 1.0 * (Instant.now().toEpochMilli() - start.toEpochMilli()) / 1000;
+        final var checked = progress.checked.sum();
+        System.out.println(String.format("%s d0s checked in %s seconds (%s d0s/s), %s solutions found", checked, timeTaken, checked / Math.max(timeTaken, 1e-3), progress.found.size()));
+    }
+
+    // Runs steps 1-4 for d0s[lo, hi). Steps 1-3 first run for all the d0s, which gives the expected work of each d0
+    // from `CostModel`. The scans then run most expensive first, and are split so that both halves of a split have
+    // about the same expected work, so that all threads finish together.
+    static class D0Task extends RecursiveAction {
+        private final List<Models.NumberAndFactors> d0s;
+        private final int lo;
+        private final int hi;
+        private final Models.SearchParameters params;
+        private final Progress progress;
+        @Nullable private final ProgressJournal journal;
+
+        D0Task(List<Models.NumberAndFactors> d0s, int lo, int hi, Models.SearchParameters params, Progress progress, @Nullable ProgressJournal journal) {
+            this.d0s = d0s;
+            this.lo = lo;
+            this.hi = hi;
+            this.params = params;
+            this.progress = progress;
+            this.journal = journal;
+        }
+
+        @Override
+        protected void compute() {
+            final var plans = new Step4.Plan[hi - lo];
+            new PlanTask(plans, lo, hi).invoke();
+            final var sorted = Arrays.stream(plans)
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingDouble(CostModel::expectedWork).reversed())
+                    .toArray(Step4.Plan[]::new);
+            final var cumulativeWork = new double[sorted.length + 1];
+            for (int i = 0; i < sorted.length; i++) {
+                cumulativeWork[i + 1] = cumulativeWork[i] + CostModel.expectedWork(sorted[i]);
+            }
+            new ScanTask(sorted, cumulativeWork, 0, sorted.length).invoke();
+        }
+
+        // Runs steps 1-3 for d0s[from, to), leaving null for the d0s that are already done.
+        private class PlanTask extends RecursiveAction {
+            private final Step4.Plan[] plans;
+            private final int from;
+            private final int to;
+
+            PlanTask(Step4.Plan[] plans, int from, int to) {
+                this.plans = plans;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > leafSize) {
+                    final var mid = (from + to) >>> 1;
+                    invokeAll(new PlanTask(plans, from, mid), new PlanTask(plans, mid, to));
+                    return;
+                }
+                for (int i = from; i < to && !progress.cancelled.get(); i++) {
+                    final var d0 = d0s.get(i);
+                    if (null != journal && journal.isD0Done(d0.number())) continue;
+                    plans[i - lo] = Runner.plan(d0, params);
+                }
+            }
+        }
+
+        // Scans plans[from, to), splitting where the expected work is halved.
+        private class ScanTask extends RecursiveAction {
+            private final Step4.Plan[] plans;
+            private final double[] cumulativeWork;
+            private final int from;
+            private final int to;
+
+            ScanTask(Step4.Plan[] plans, double[] cumulativeWork, int from, int to) {
+                this.plans = plans;
+                this.cumulativeWork = cumulativeWork;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 1) {
+                    final var halfWork = (cumulativeWork[from] + cumulativeWork[to]) / 2;
+                    var mid = Arrays.binarySearch(cumulativeWork, from + 1, to, halfWork);
+                    mid = Math.min(Math.max(mid < 0 ? -mid - 1 : mid, from + 1), to - 1);
+                    invokeAll(new ScanTask(plans, cumulativeWork, from, mid), new ScanTask(plans, cumulativeWork, mid, to));
+                    return;
+                }
+                if (to == from || progress.cancelled.get()) return;
+                final var plan = plans[from];
+                Step4.check(plan, progress);
+                // The scan may have stopped part way.
+                if (progress.cancelled.get()) return;
+                progress.checked.increment();
+                if (null != journal) journal.markD0Done(plan.d().number(), plan.d().largestPrime());
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.cliu;
+
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Staged alternative to `ParallelRunner`. Steps 1-3 and the CRT and S_d(p) setup of step 4 allocate heavily and are
+ * latency-bound, while the Z_m scan of step 4 is pure CPU. So the setup of many d runs ahead on producer threads,
+ * which hand ready `Step4.Plan`s through a bounded queue to one scanning thread per core. The scanning threads never
+ * wait on setup as long as the queue is not empty.
+ *
+ * At most `plansPerConsumer` plans per scanning thread are being prepared or waiting in the queue, which bounds memory
+ * and stops the producers from running too far ahead. It also bounds the `SearchContext`s of the producers, which are
+ * pooled rather than per thread, as virtual threads only ever run one task.
+ *
+ * A d0 whose plan or scan throws, be it an exception or an error such as running out of memory, is not silently
+ * skipped: no more d0s are handed out, the scans in progress stop, the plans left in the queue are dropped without
+ * being scanned, and the run fails with the first failure, so that the d0 is never reported as searched.
+ */
+public class PipelinedRunner {
+    static final int plansPerConsumer = 4;
+
+    // Tells a scanning thread that there are no more plans.
+    private static final Step4.Plan endOfPlans = new Step4.Plan(null, 0, null, null, null, 0, 0);
+
+    public static ParallelRunner.Progress run(int consumers, Models.SearchParameters params) {
+        final var primes = PrimeSource.first(Runner.numPrimes);
+        final var admissibility = new Admissibility(params.k(), primes, Runner.numPrimes);
+        final var progress = run(Spliterators.iterator(Enumeration.smoothNumbers(Runner.dMin, Runner.dMax, primes, 0, Runner.numPrimes, admissibility)), params, consumers);
+        System.out.println(admissibility.stats());
+        return progress;
+    }
+
+    public static ParallelRunner.Progress run(Iterator<Models.NumberAndFactors> d0s, Models.SearchParameters params, int consumers) {
+        return run(d0s, params, consumers, (d0, context) -> Runner.plan(d0, params, context));
+    }
+
+    // Runs steps 1-3 for a d0, with the scratch of `context`.
+    interface Planner {
+        Step4.Plan plan(Models.NumberAndFactors d0, SearchContext context);
+    }
+
+    static ParallelRunner.Progress run(Iterator<Models.NumberAndFactors> d0s, Models.SearchParameters params, int consumers, Planner planner) {
+        CubeRoots.precompute(params.k(), CubeRoots.precomputeBound);
+        final var capacity = consumers * plansPerConsumer;
+        final var plans = new ArrayBlockingQueue<Step4.Plan>(capacity);
+        // A permit is taken before a plan is prepared, and given back when a scanning thread takes the plan, so the
+        // queue always has room for the plans being prepared.
+        final var permits = new Semaphore(capacity);
+        final var progress = new ParallelRunner.Progress();
+        final var failure = new AtomicReference<IllegalStateException>();
+        // Producer tasks may each run on a new virtual thread, so they don't use the context of their thread.
+        final var contexts = new SearchContext.Pool();
+
+        final var scanners = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            scanners[i] = new Thread(() -> scan(plans, permits, progress, failure), "step4-scan-" + i);
+            scanners[i].start();
+        }
+
+        final var producers = preparationExecutor(consumers);
+        try {
+            while (d0s.hasNext() && null == failure.get()) {
+                final var d0 = d0s.next();
+                permits.acquire();
+                producers.execute(() -> {
+                    // The d0s handed out before a failure aren't planned anymore.
+                    if (null != failure.get()) {
+                        permits.release();
+                        return;
+                    }
+                    final var context = contexts.take();
+                    try {
+                        plans.add(planner.plan(d0, context));
+                    } catch (Throwable e) {
+                        fail(progress, failure, new IllegalStateException(String.format("Planning d0=%s failed", d0), e));
+                        permits.release();
+                    } finally {
+                        contexts.giveBack(context);
+                    }
+                });
+            }
+            producers.shutdown();
+            producers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            for (int i = 0; i < consumers; i++) {
+                plans.put(endOfPlans);
+            }
+            for (var scanner : scanners) {
+                scanner.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (null != failure.get()) throw failure.get();
+        System.out.println(String.format("%s d0s checked, solutions found: %s", progress.checked.sum(), progress.found));
+        return progress;
+    }
+
+    private static void scan(BlockingQueue<Step4.Plan> plans, Semaphore permits, ParallelRunner.Progress progress, AtomicReference<IllegalStateException> failure) {
+        while (true) {
+            final Step4.Plan plan;
+            try {
+                plan = plans.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (plan == endOfPlans) return;
+            permits.release();
+            // Keeps taking plans after a failure, without scanning them, so that the producers don't block.
+            if (null != failure.get()) continue;
+            try {
+                Step4.check(plan, progress);
+                progress.checked.increment();
+            } catch (Throwable e) {
+                fail(progress, failure, new IllegalStateException(String.format("Scanning d=%s failed", plan.d()), e));
+            }
+        }
+    }
+
+    // Records the first failure, and stops the scans in progress.
+    private static void fail(ParallelRunner.Progress progress, AtomicReference<IllegalStateException> failure, IllegalStateException e) {
+        failure.compareAndSet(null, e);
+        progress.cancelled.set(true);
+    }
+
+    // Preparing plans mostly waits on allocation rather than using a core, so it runs on virtual threads when the JVM
+    // has them (JDK 21+). Otherwise, on a small pool of platform threads next to the scanning threads.
+    static ExecutorService preparationExecutor(int consumers) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(1, consumers / 2));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.cliu;
+
+/**
+ * Scratch space for steps 2 and 3, reused by a thread for every d it plans so that planning doesn't allocate. The
+ * a and b returned by `Step2.step2` and `Step3.step3` live here, and are only valid until the thread plans the next d.
+ * Each thread's is held by its `SearchContext`.
+ */
+public class PlannerScratch {
+    private static final Models.NumberAndFactors one = new Models.NumberAndFactors(1L);
+
+    // The primes of A as indices into `Constants.A`, ordered by log |S_d(p)| / log p, along with those ratios.
+    final int[] order = new int[Constants.A.size()];
+    final double[] ratios = new double[Constants.A.size()];
+    final Models.NumberAndFactors a = new Models.NumberAndFactors(1L, new long[8], 0);
+    final Models.NumberAndFactors b = new Models.NumberAndFactors(1L, new long[8], 0);
+
+    static void reset(Models.NumberAndFactors n) {
+        n.copyFrom(one);
+    }
+}
@@ -0,0 +1,218 @@
+package org.cliu;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The tables every process of a search for k would otherwise compute on its own, in one file written by the `tables`
+ * mode of `Main`: the S_d(p) of `SsubdTables`, and the first primes with the cube roots of k mod each of them. The file
+ * is memory-mapped read-only, so the roots are shared through the page cache by all the processes on a host and cost
+ * neither startup time nor heap. The S_d(p) rows are copied to the heap, as they are well under 1 MB.
+ *
+ * The layout is little-endian, with every section 8-byte aligned:
+ *   header   - `magic`, `version`, k, the number of primes n, the number of aux primes and their sum, 8 bytes each.
+ *   S_d(p)   - for each p in `Constants.A`, the 3p rows of `SsubdTables` in order, (p + 63) / 64 longs each.
+ *   primes   - the first n primes, as ints.
+ *   roots    - the cube roots of k mod each prime, packed in a long as in `CubeRoots`.
+ * Files with another magic, version, k or set of aux primes are ignored.
+ */
+public class PrecomputedTables {
+    static final long magic = 0x5342415433425543L;
+    static final long version = 2;
+    private static final int headerBytes = 6 * Long.BYTES;
+    // Primes whose cube roots are computed together when writing.
+    private static final int chunkPrimes = 1 << 16;
+    private static final ConcurrentHashMap<Integer, Optional<PrecomputedTables>> saved = new ConcurrentHashMap<>();
+
+    private final int k;
+    private final SsubdTables ssubdTables;
+    private final IntBuffer primes;
+    private final LongBuffer roots;
+
+    private PrecomputedTables(int k, SsubdTables ssubdTables, IntBuffer primes, LongBuffer roots) {
+        this.k = k;
+        this.ssubdTables = ssubdTables;
+        this.primes = primes;
+        this.roots = roots;
+    }
+
+    static Path defaultPath(int k) {
+        return Path.of(String.format("tables-k%s.bin", k));
+    }
+
+    // The tables saved for k in the working directory, if any.
+    @Nullable
+    static PrecomputedTables saved(int k) {
+        return saved.computeIfAbsent(k, key -> {
+            final var path = defaultPath(k);
+            if (!Files.exists(path)) return Optional.empty();
+            final var tables = open(path);
+            if (null == tables || tables.k != k) {
+                System.out.println(String.format("Ignoring %s, which wasn't written for k=%s by this version", path, k));
+                return Optional.empty();
+            }
+            System.out.println(String.format("Using precomputed tables %s: %s", path, tables));
+            return Optional.of(tables);
+        }).orElse(null);
+    }
+
+    // The tables in the file, or null if it isn't in the current format.
+    @Nullable
+    static PrecomputedTables open(Path path) {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < headerBytes) return null;
+            final var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerBytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            if (header.get(0) != magic || header.get(1) != version || header.get(4) != Constants.A.size() || header.get(5) != auxPrimeSum()) {
+                return null;
+            }
+            final var k = (int) header.get(2);
+            final var n = (int) header.get(3);
+            final var ssubdOffset = (long) headerBytes;
+            final var primesOffset = ssubdOffset + ssubdBytes();
+            final var rootsOffset = primesOffset + align((long) n * Integer.BYTES);
+            if (channel.size() != rootsOffset + (long) n * Long.BYTES) return null;
+
+            final var words = channel.map(FileChannel.MapMode.READ_ONLY, ssubdOffset, ssubdBytes()).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            final var rows = new long[Constants.A.size()][][];
+            for (int i = 0; i < rows.length; i++) {
+                final int p = Constants.A.get(i);
+                rows[i] = new long[3 * p][(p + 63) >>> 6];
+                for (var row : rows[i]) words.get(row);
+            }
+            // The mappings stay valid after the channel is closed.
+            final var primes = channel.map(FileChannel.MapMode.READ_ONLY, primesOffset, (long) n * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            final var roots = channel.map(FileChannel.MapMode.READ_ONLY, rootsOffset, (long) n * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            return new PrecomputedTables(k, new SsubdTables(rows), primes, roots);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the tables for k and the first `primeCount` primes to `path`. The cube roots are computed in parallel,
+     * a chunk of primes at a time, and written as they come. The file is written next to `path` and moved over it once
+     * complete, so that processes which already mapped the old one keep reading it.
+     */
+    static void write(Path path, int k, int primeCount) {
+        // Each section is mapped as a whole, so must stay below 2 GB.
+        if ((long) primeCount * Long.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many primes for one table file: " + primeCount);
+        }
+        final var primeSource = PrimeSource.first(primeCount);
+        final var tables = SsubdTables.of(k);
+        final var partial = path.resolveSibling(path.getFileName() + ".partial");
+        try (var channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final var header = littleEndian(headerBytes);
+            header.putLong(magic).putLong(version).putLong(k).putLong(primeCount).putLong(Constants.A.size()).putLong(auxPrimeSum());
+            writeFully(channel, header);
+
+            final var ssubd = littleEndian((int) ssubdBytes());
+            for (int i = 0; i < Constants.A.size(); i++) {
+                for (var row : tables.rows[i]) {
+                    for (var word : row) ssubd.putLong(word);
+                }
+            }
+            writeFully(channel, ssubd);
+
+            final var primes = primeSource.range(0, primeCount);
+            final var primesBuffer = littleEndian((int) align((long) primeCount * Integer.BYTES));
+            primesBuffer.asIntBuffer().put(primes);
+            primesBuffer.position(primesBuffer.limit());
+            writeFully(channel, primesBuffer);
+
+            for (int from = 0; from < primeCount; from += chunkPrimes) {
+                final var to = Math.min(from + chunkPrimes, primeCount);
+                final var chunk = littleEndian((to - from) * Long.BYTES);
+                final var chunkRoots = chunk.asLongBuffer();
+                final var start = from;
+                IntStream.range(from, to).parallel().forEach(i -> {
+                    chunkRoots.put(i - start, CubeRoots.pack(Utils.cuberootOfPrimeComputation(k, primes[i])));
+                });
+                chunk.position(chunk.limit());
+                writeFully(channel, chunk);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    SsubdTables ssubdTables() {
+        return ssubdTables;
+    }
+
+    int primeCount() {
+        return primes.limit();
+    }
+
+    // Index of p among the primes, or -1.
+    int indexOf(long p) {
+        var low = 0;
+        var high = primes.limit() - 1;
+        if (high < 0 || p > primes.get(high)) return -1;
+        while (low <= high) {
+            final var mid = (low + high) >>> 1;
+            final var q = primes.get(mid);
+            if (q < p) {
+                low = mid + 1;
+            } else if (q > p) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // The cube roots of k mod the i-th prime, packed as in `CubeRoots`.
+    long packedCubeRoots(int i) {
+        return roots.get(i);
+    }
+
+    private static long ssubdBytes() {
+        var words = 0L;
+        for (int p : Constants.A) words += 3L * p * ((p + 63) >>> 6);
+        return words * Long.BYTES;
+    }
+
+    private static long auxPrimeSum() {
+        return Constants.A.stream().mapToLong(p -> p).sum();
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & -8L;
+    }
+
+    private static ByteBuffer littleEndian(int bytes) {
+        return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("k=%s, %s primes up to %s", k, primeCount(), primeCount() == 0 ? 0 : primes.get(primeCount() - 1));
+    }
+}
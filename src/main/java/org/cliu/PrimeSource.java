@@ -0,0 +1,195 @@
+package org.cliu;
+
+import java.util.Arrays;
+
+/**
+ * The primes up to a limit, sieved lazily in segments rather than loaded up front.
+ *
+ * Each segment covers `segmentSpan` consecutive numbers, and keeps one bit per odd number plus, for every 64 bits, the
+ * number of primes in the segment before them. That's about 1.25 bits per odd number, e.g. 160 MB for the first 1e8
+ * primes, instead of the 1.2 GB of the `int[]` and `long[]` copies of the primes4j table. Segments are sieved in order
+ * on first use, so only the part of the range actually used is ever sieved.
+ *
+ * Both `prime(i)` and `pi(x)` take a handful of array lookups once the segment is sieved. Reads are safe from any
+ * thread, sieving new segments is serialized.
+ */
+public class PrimeSource {
+    // 2^18 numbers, so that a segment never holds more than 2^16 primes and the counts fit in a char.
+    static final int segmentSpan = 1 << 18;
+    private static final int wordsPerSegment = segmentSpan / 2 / 64;
+
+    private final long limit;
+    private final int segmentCount;
+    // Bit j of segment s stands for the odd number s * segmentSpan + 2j + 1. Bit 0 of segment 0 stands for 2 instead.
+    private final long[][] bits;
+    private final char[][] wordRanks;
+    // Number of primes below each segment, for the segments sieved so far, and one past the last of them.
+    private final int[] primesBefore;
+    private volatile int sieved;
+    // The primes up to the square root of the limit, used to sieve the segments.
+    private final int[] sievingPrimes;
+
+    public PrimeSource(long limit) {
+        if (limit > (long) segmentSpan * Integer.MAX_VALUE) throw new IllegalArgumentException("limit is too large: " + limit);
+        this.limit = limit;
+        this.segmentCount = (int) (limit / segmentSpan + 1);
+        this.bits = new long[segmentCount][];
+        this.wordRanks = new char[segmentCount][];
+        this.primesBefore = new int[segmentCount + 1];
+        this.sievingPrimes = primesUpTo(sqrtFloor(limit) + 1);
+    }
+
+    // A source holding at least the first `count` primes.
+    public static PrimeSource first(int count) {
+        // p_n < n (ln n + ln ln n) for n >= 6.
+        final var n = Math.max(count, 6);
+        return new PrimeSource((long) Math.ceil(n * (Math.log(n) + Math.log(Math.log(n)))));
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    // The i-th prime, counting from 0 for 2.
+    public long prime(int i) {
+        var s = sieved;
+        while (primesBefore[s] <= i) {
+            if (s == segmentCount) throw new IndexOutOfBoundsException("Fewer than " + (i + 1) + " primes up to " + limit);
+            s = sieveThrough(s);
+        }
+        // The segment holding the i-th prime is the last one with primesBefore <= i.
+        var segment = Arrays.binarySearch(primesBefore, 0, s + 1, i);
+        if (segment < 0) {
+            segment = -segment - 2;
+        } else {
+            // Segments without primes have the same count as the next one.
+            while (primesBefore[segment + 1] == i) segment++;
+        }
+        final var rank = i - primesBefore[segment];
+        final var words = bits[segment];
+        final var ranks = wordRanks[segment];
+        var word = Arrays.binarySearch(ranks, (char) rank);
+        if (word < 0) {
+            word = -word - 2;
+        } else {
+            while (word + 1 < wordsPerSegment && ranks[word + 1] == rank) word++;
+        }
+        var w = words[word];
+        for (int r = rank - ranks[word]; r > 0; r--) {
+            w &= w - 1;
+        }
+        final var j = (long) word * 64 + Long.numberOfTrailingZeros(w);
+        final var base = (long) segment * segmentSpan;
+        return segment == 0 && j == 0 ? 2 : base + 2 * j + 1;
+    }
+
+    // Number of primes <= x.
+    public int pi(long x) {
+        if (x < 2) return 0;
+        if (x > limit) throw new IndexOutOfBoundsException(x + " is past the limit " + limit);
+        final var segment = (int) (x / segmentSpan);
+        if (segment >= sieved) sieveThrough(segment);
+        // Index of the last odd number <= x in the segment, or of 2 when x = 2.
+        final var offset = x - (long) segment * segmentSpan;
+        final var j = (int) ((offset - 1) / 2);
+        if (offset == 0) return primesBefore[segment];
+        final var word = j >>> 6;
+        final var mask = (j & 63) == 63 ? -1L : (1L << ((j & 63) + 1)) - 1;
+        return primesBefore[segment] + wordRanks[segment][word] + Long.bitCount(bits[segment][word] & mask);
+    }
+
+    // Index of the largest prime <= x, or -1.
+    public int indexOfLargestAtMost(long x) {
+        return pi(Math.min(x, limit)) - 1;
+    }
+
+    // The primes in [from, to), by index.
+    public int[] range(int from, int to) {
+        final var primes = new int[to - from];
+        for (int i = from; i < to; i++) {
+            primes[i - from] = (int) prime(i);
+        }
+        return primes;
+    }
+
+    // Sieves the segments up to and including `segment`, and returns the number of sieved segments.
+    private synchronized int sieveThrough(int segment) {
+        var s = sieved;
+        for (; s <= segment && s < segmentCount; s++) {
+            sieveSegment(s);
+            // Publishes the segment along with its count.
+            sieved = s + 1;
+        }
+        return s;
+    }
+
+    private void sieveSegment(int segment) {
+        final var base = (long) segment * segmentSpan;
+        final var end = Math.min(base + segmentSpan, limit + 1);
+        final var words = new long[wordsPerSegment];
+        // Marks the odd numbers in [base, end) as candidates.
+        final var odds = (int) ((end - base) / 2);
+        for (int j = 0; j < odds; j++) {
+            words[j >>> 6] |= 1L << j;
+        }
+        for (var p : sievingPrimes) {
+            if (p == 2) continue;
+            final var square = (long) p * p;
+            if (square >= end) break;
+            // First odd multiple of p that's at least max(p^2, base).
+            var m = Math.max(square, (base + p - 1) / p * p);
+            if ((m & 1) == 0) m += p;
+            for (; m < end; m += 2L * p) {
+                final var j = (int) ((m - base) / 2);
+                words[j >>> 6] &= ~(1L << j);
+            }
+        }
+        if (segment == 0) {
+            // 1 isn't a prime, and bit 0 stands for 2 instead.
+            words[0] |= 1L;
+            if (limit < 2) words[0] &= ~1L;
+        }
+        final var ranks = new char[wordsPerSegment];
+        var count = 0;
+        for (int w = 0; w < wordsPerSegment; w++) {
+            ranks[w] = (char) count;
+            count += Long.bitCount(words[w]);
+        }
+        bits[segment] = words;
+        wordRanks[segment] = ranks;
+        primesBefore[segment + 1] = primesBefore[segment] + count;
+    }
+
+    static long sqrtFloor(long n) {
+        var r = (long) Math.sqrt((double) n);
+        while (r * r > n) r--;
+        while ((r + 1) * (r + 1) <= n) r++;
+        return r;
+    }
+
+    // Sieve of Eratosthenes over the odd numbers, for the primes up to a small limit all at once.
+    static int[] primesUpTo(long limit) {
+        if (limit < 2) return new int[0];
+        final var n = (int) ((limit - 1) / 2);
+        // Bit i stands for 2i + 3.
+        final var composite = new long[(n >>> 6) + 1];
+        for (long i = 0; (2 * i + 3) * (2 * i + 3) <= limit; i++) {
+            if ((composite[(int) (i >>> 6)] & (1L << i)) != 0) continue;
+            final var p = 2 * i + 3;
+            for (long j = (p * p - 3) / 2; j < n; j += p) {
+                composite[(int) (j >>> 6)] |= 1L << j;
+            }
+        }
+        var count = 1;
+        for (int i = 0; i < n; i++) {
+            if ((composite[i >>> 6] & (1L << i)) == 0) count++;
+        }
+        final var primes = new int[count];
+        primes[0] = 2;
+        count = 1;
+        for (int i = 0; i < n; i++) {
+            if ((composite[i >>> 6] & (1L << i)) == 0) primes[count++] = 2 * i + 3;
+        }
+        return primes;
+    }
+}
@@ -0,0 +1,241 @@
+package org.cliu;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of the work that went through `Runner.runOne`, so that a crashed or redeployed campaign can
+ * be resumed without redoing days of search.
+ *
+ * Each line is one record, keyed by the search parameters it was run with:
+ *   `D k zMax c0 c1 c2 d0 prime` - steps 1-4 finished for d0, whose largest prime factor is `prime`.
+ *   `P k zMax c0 c1 c2 prime`    - every d0 with this largest prime factor finished, so the partition need not even be
+ *                                  enumerated again.
+ *   `S k zMax c0 c1 c2 text`     - a solution was found, kept so it survives in the journal along with the progress.
+ *
+ * Records are buffered and only written and fsync'ed in batches, as an fsync per d0 would be far slower than the
+ * search itself. A crash loses at most the last unsynced batch, which is simply searched again.
+ *
+ * The D records of a partition are useless once its P record is written, so the journal is compacted without them
+ * when opened, and again once `compactEveryStaleRecords` of them have piled up. Over a long run, the journal and the
+ * set loaded on resume only hold the D records of the few partitions in flight, and one P record per partition.
+ */
+public class ProgressJournal implements AutoCloseable {
+    // Sync after this many buffered records, or this many millis since the last sync, whichever comes first.
+    static final int syncEveryRecords = 4096;
+    static final long syncEveryMillis = 5000;
+    // Compact once this many D records belong to finished partitions.
+    static final int compactEveryStaleRecords = 1 << 20;
+
+    private final Path path;
+    private FileChannel channel;
+    private final Models.SearchParameters params;
+    private final String keyPrefix;
+    private final LongOpenHashSet doneD0s = new LongOpenHashSet();
+    private final IntOpenHashSet donePartitions = new IntOpenHashSet();
+    // D records in the journal for each partition not marked done yet, and the ones of partitions marked since.
+    private final Int2IntOpenHashMap liveRecords = new Int2IntOpenHashMap();
+    private int staleRecords = 0;
+
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingRecords = 0;
+    private long lastSyncMillis = System.currentTimeMillis();
+
+    private ProgressJournal(Path path, Models.SearchParameters params) {
+        this.path = path;
+        this.params = params;
+        final var profile = params.profile();
+        this.keyPrefix = String.format("%s %s %s %s %s ", params.k(), params.zMax(), params.c0(), params.c1(), params.c2())
+                + (null == profile ? "" : String.format("profile-%s ", profile.id()));
+    }
+
+    /**
+     * Opens the journal at `path`, creating it if needed. When `resume` is set, the records already in the journal
+     * for the same search parameters are loaded and reported as done, otherwise they are ignored.
+     */
+    public static ProgressJournal open(Path path, Models.SearchParameters params, boolean resume) {
+        try {
+            final var journal = new ProgressJournal(path, params);
+            // Also drops a torn last line left by a crash, so that it does not swallow the next record.
+            if (Files.exists(path)) journal.compact();
+            journal.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (resume) {
+                journal.load();
+            }
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The value of a record with this journal's parameters, or null. Keys with a profile start with the key without
+    // one, and those records are told apart by their value, which then isn't a number.
+    @Nullable
+    private String valueOf(String line, char type) {
+        if (line.length() < 2 || line.charAt(0) != type || !line.startsWith(keyPrefix, 2)) return null;
+        final var value = line.substring(2 + keyPrefix.length());
+        return value.isEmpty() || !Character.isDigit(value.charAt(0)) ? null : value;
+    }
+
+    // Partitions marked done in the journal for this journal's parameters.
+    private IntOpenHashSet readDonePartitions() throws IOException {
+        final var done = new IntOpenHashSet();
+        forEachCompleteLine(line -> {
+            final var value = valueOf(line, 'P');
+            if (null != value) done.add(Integer.parseInt(value));
+        });
+        return done;
+    }
+
+    // The partition of a D record value `d0 prime`, or -1 for records without one.
+    private static int partitionOf(String value) {
+        final var space = value.indexOf(' ');
+        return space < 0 ? -1 : Integer.parseInt(value.substring(space + 1));
+    }
+
+    /**
+     * Rewrites the journal without the D records of finished partitions, and without a torn last line. The journal is
+     * written next to `path` and moved over it, so a crash in between leaves either the old or the new journal.
+     */
+    private void compact() throws IOException {
+        final var done = readDonePartitions();
+        final var compacted = path.resolveSibling(path.getFileName() + ".compacting");
+        try (var writer = Files.newBufferedWriter(compacted, StandardCharsets.US_ASCII)) {
+            forEachCompleteLine(line -> {
+                final var value = valueOf(line, 'D');
+                if (null != value && done.contains(partitionOf(value))) return;
+                try {
+                    writer.write(line);
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        try (var written = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+            written.force(true);
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        staleRecords = 0;
+    }
+
+    // Every line of the journal but a torn last line, which a crash may leave in the middle of writing a record.
+    private void forEachCompleteLine(Consumer<String> action) throws IOException {
+        var isTorn = false;
+        if (Files.size(path) > 0) {
+            try (var reader = FileChannel.open(path, StandardOpenOption.READ)) {
+                final var last = ByteBuffer.allocate(1);
+                reader.read(last, reader.size() - 1);
+                isTorn = last.get(0) != '\n';
+            }
+        }
+        try (var lines = Files.lines(path, StandardCharsets.US_ASCII)) {
+            final var it = lines.iterator();
+            while (it.hasNext()) {
+                final var line = it.next();
+                if (isTorn && !it.hasNext()) break;
+                action.accept(line);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        donePartitions.addAll(readDonePartitions());
+        forEachCompleteLine(line -> {
+            final var value = valueOf(line, 'D');
+            if (null == value) return;
+            final var partition = partitionOf(value);
+            // Finished partitions aren't enumerated again, so their d0s needn't be remembered.
+            if (donePartitions.contains(partition)) return;
+            final var space = value.indexOf(' ');
+            doneD0s.add(Long.parseLong(space < 0 ? value : value.substring(0, space)));
+            if (partition >= 0) liveRecords.addTo(partition, 1);
+        });
+        System.out.println(String.format("Resuming with %s partitions and %s d0s already done for %s", donePartitions.size(), doneD0s.size(), params));
+    }
+
+    public Models.SearchParameters params() {
+        return params;
+    }
+
+    public synchronized boolean isD0Done(long d0) {
+        return doneD0s.contains(d0);
+    }
+
+    public synchronized boolean isPartitionDone(int prime) {
+        return donePartitions.contains(prime);
+    }
+
+    public synchronized void markD0Done(long d0, int partition) {
+        pending.append('D').append(' ').append(keyPrefix).append(d0).append(' ').append(partition).append('\n');
+        pendingRecords++;
+        liveRecords.addTo(partition, 1);
+        if (pendingRecords >= syncEveryRecords || System.currentTimeMillis() - lastSyncMillis >= syncEveryMillis) {
+            sync();
+        }
+    }
+
+    // Partitions are marked rarely and let us skip the most work on resume, so they are synced right away.
+    public synchronized void markPartitionDone(int prime) {
+        append('P', prime);
+        sync();
+        staleRecords += liveRecords.remove(prime);
+        if (staleRecords >= compactEveryStaleRecords) {
+            try {
+                channel.close();
+                compact();
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public synchronized void markSolution(String solution) {
+        pending.append('S').append(' ').append(keyPrefix).append(solution).append('\n');
+        sync();
+    }
+
+    private void append(char type, long value) {
+        pending.append(type).append(' ').append(keyPrefix).append(value).append('\n');
+        pendingRecords++;
+    }
+
+    public synchronized void sync() {
+        try {
+            final var buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pending.setLength(0);
+        pendingRecords = 0;
+        lastSyncMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() {
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
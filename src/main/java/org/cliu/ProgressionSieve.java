@@ -0,0 +1,109 @@
+package org.cliu;
+
+import java.math.BigInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Alternative to walking a progression z = r + j * multiplierM one z at a time, for when m is small and each residue
+ * has a long progression, e.g. d = 5. Takes windows of j, and marks the j that pass the S_d(p) filter of every aux
+ * prime in a bitset of `windowWords` words, one AND per prime per 64 values of j. Only the z on set bits get the
+ * square check.
+ *
+ * As p doesn't divide m, j -> z mod p is a bijection on j mod p. With c = r / multiplierM mod p, we have
+ * z = (c + j) * multiplierM mod p, so whether z passes only depends on (c + j) mod p. The pattern of 64 j starting
+ * at each such phase is computed once per d, and only c changes between residues.
+ */
+public class ProgressionSieve {
+    // 32768 values of j per window, which fits in L1 along with the patterns.
+    static final int windowWords = 1 << 9;
+    static final int windowBits = windowWords << 6;
+    // Residues with shorter progressions than this are walked instead, as they'd only fill a small part of a window.
+    static final long minStepsPerResidue = windowBits / 8;
+
+    private final int[] primes;
+    private final FastMod[] reducers;
+    // patterns[i][u] has bit t set when the z at phase (u + t) mod p passes S_d(p), for p = primes[i].
+    private final long[][] patterns;
+    // (multiplierM mod p)^-1 mod p, and 64 mod p.
+    private final int[] inverseM;
+    private final int[] wordShift;
+
+    private ProgressionSieve(int[] primes, FastMod[] reducers, long[][] patterns, int[] inverseM, int[] wordShift) {
+        this.primes = primes;
+        this.reducers = reducers;
+        this.patterns = patterns;
+        this.inverseM = inverseM;
+        this.wordShift = wordShift;
+    }
+
+    // Whether the z of a plan are better sieved than walked.
+    static boolean isWorthIt(long m, long zMax) {
+        return zMax / m >= minStepsPerResidue;
+    }
+
+    static ProgressionSieve of(int[] primesInB, long[][] ssubdCandidateLookupTable, long[] multiplierMModBCache, FastMod[] reducers) {
+        final var patterns = new long[primesInB.length][];
+        final var inverseM = new int[primesInB.length];
+        final var wordShift = new int[primesInB.length];
+        for (int i = 0; i < primesInB.length; i++) {
+            final var p = primesInB[i];
+            final var mModP = (int) multiplierMModBCache[p - 1];
+            final var passes = ssubdCandidateLookupTable[p - 1];
+            // Whether the z at each phase v, i.e. z = v * multiplierM mod p, passes.
+            final var byPhase = new boolean[p];
+            for (int v = 0; v < p; v++) {
+                byPhase[v] = SsubdTables.contains(passes, (long) v * mModP % p);
+            }
+            patterns[i] = new long[p];
+            for (int u = 0; u < p; u++) {
+                var word = 0L;
+                for (int t = 0; t < 64; t++) {
+                    if (byPhase[(u + t) % p]) word |= 1L << t;
+                }
+                patterns[i][u] = word;
+            }
+            inverseM[i] = BigInteger.valueOf(mModP).modInverse(BigInteger.valueOf(p)).intValueExact();
+            wordShift[i] = 64 % p;
+        }
+        return new ProgressionSieve(primesInB, reducers, patterns, inverseM, wordShift);
+    }
+
+    // Hands every z = z0 + j * multiplierM, 0 <= j < steps, that passes all the aux primes to `survivor`, in order.
+    // The window and phases live in `context`.
+    void forEachSurvivor(long z0, long steps, long multiplierM, SearchContext context, LongConsumer survivor) {
+        final var window = context.sieveWindow;
+        final var phases = context.sievePhases(primes.length);
+        for (int i = 0; i < primes.length; i++) {
+            phases[i] = (int) ((long) reducers[i].floorMod(z0) * inverseM[i] % primes[i]);
+        }
+        for (long j0 = 0; j0 < steps; j0 += windowBits) {
+            final var bits = (int) Math.min(windowBits, steps - j0);
+            final var words = (bits + 63) >>> 6;
+            for (int w = 0; w < words; w++) {
+                window[w] = -1L;
+            }
+            if ((bits & 63) != 0) window[words - 1] = (1L << (bits & 63)) - 1;
+
+            for (int i = 0; i < primes.length; i++) {
+                final var p = primes[i];
+                final var pattern = patterns[i];
+                final var shift = wordShift[i];
+                var phase = phases[i];
+                for (int w = 0; w < words; w++) {
+                    window[w] &= pattern[phase];
+                    phase += shift;
+                    if (phase >= p) phase -= p;
+                }
+                // The next window starts windowBits further, i.e. windowWords words.
+                phases[i] = phase;
+            }
+
+            for (int w = 0; w < words; w++) {
+                for (var word = window[w]; word != 0; word &= word - 1) {
+                    final var j = j0 + ((long) w << 6) + Long.numberOfTrailingZeros(word);
+                    survivor.accept(z0 + j * multiplierM);
+                }
+            }
+        }
+    }
+}
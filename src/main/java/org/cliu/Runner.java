@@ -1,64 +1,109 @@
 package org.cliu;
 
-import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.time.Instant;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class Runner {
-    public static void run() {
-        final var primesIntArray = Utils.primes((int)1e8);
-        final var primesLongArray = Arrays.stream(primesIntArray).asLongStream().toArray();
-
-        // Recursive enumeration of positive integers using prime factors. We partition by the largest prime factor.
-        // This appears to not be very efficient and dependent on the ratio between zMax and the largest prime value.
-        final var n = Integer.MAX_VALUE;
-        for(int i=primesLongArray.length-1;i>=0;i--) {
-            var prime = primesIntArray[i];
-            System.out.println(String.format("Generating at most %s numbers with prime: %s", n, prime));
+    // Search boundaries of the current campaign: d0 in (dMin, dMax], with the largest prime factor of d0 taken
+    // from the first `numPrimes` primes.
+    static final long dMin = (long) 1e17;
+    static final long dMax = (long) 3e17;
+    static final int numPrimes = (int) 1e8;
+    static final int k = 3;
+
+    public static void run(Models.SearchParameters params) {
+        final var k = params.k();
+        final var primes = PrimeSource.first(numPrimes);
+        final var admissibility = new Admissibility(k, primes, numPrimes);
+        CubeRoots.precompute(k, CubeRoots.precomputeBound);
+
+        // Enumeration of positive integers using prime factors. We partition by the largest prime factor.
+        for(int i=numPrimes-1;i>=0;i--) {
+            var prime = primes.prime(i);
             var instant = Instant.now();
-            final var d0s = Enumeration.nSmoothEnumerationIteration((long) 1e17, (long) 3e17, primesLongArray, new Models.NumberAndFactors(prime, new Int2IntArrayMap(Map.of(prime, 1))), n, i);
-            var timeTaken = 1.0 * (Instant.now().toEpochMilli() - instant.toEpochMilli()) / 1000;
-            System.out.println(String.format("Generating numbers took %s, %s generated", timeTaken, d0s.size()));
+            final var d0s = Enumeration.partition(dMin, dMax, primes, i, admissibility);
 
-            final var k = 3;
-            instant = Instant.now();
             // For each number, execute steps 1-4 of Algorithm 3.5 of https://arxiv.org/pdf/2007.01209.pdf
-            for (var d0 : d0s) {
-                runOne(d0, k, Constants.zMax, Constants.c0, Constants.c1, Constants.c2);
-            }
+            final var checked = new long[1];
+            d0s.forEachRemaining(d0 -> {
+                final var constants = params.constantsFor(d0.number());
+                for (var solution : runOne(d0, k, params.zMax(), constants.c0(), constants.c1(), constants.c2())) {
+                    System.out.println(String.format("FOUND SOLUTION!! %s", solution));
+                }
+                checked[0]++;
+            });
 
-            timeTaken = 1.0 * (Instant.now().toEpochMilli() - instant.toEpochMilli()) / 1000;
-            System.out.println(d0s.size() + String.format(" d0s checked in %s seconds for initial prime: %s!", timeTaken, prime));
+            var timeTaken = 1.0 * (Instant.now().toEpochMilli() - instant.toEpochMilli()) / 1000;
+            System.out.println(checked[0] + String.format(" d0s checked in %s seconds for initial prime: %s!", timeTaken, prime));
+            System.out.println(admissibility.stats());
         }
     }
 
-    public static void runOneDefaults(Models.NumberAndFactors d0, int k) {
-        runOne(d0, k, Constants.zMax, Constants.c0, Constants.c1, Constants.c2);
+    public static List<Models.Solution> runOneDefaults(Models.NumberAndFactors d0, int k) {
+        return runOne(d0, k, Constants.zMax, Constants.c0, Constants.c1, Constants.c2);
+    }
+
+    public static List<Models.Solution> runOne(Models.NumberAndFactors d0, int k, long zMax, long c0, long c1, long c2) {
+        return runOne(d0, k, zMax, c0, c1, c2, null);
+    }
+
+    // Returns all the solutions for d0 with |z| < zMax. When given a pool, the z search for this d0 is split across
+    // the threads of the pool.
+    public static List<Models.Solution> runOne(Models.NumberAndFactors d0, int k, long zMax, long c0, long c1, long c2, @Nullable ForkJoinPool pool) {
+        final var sink = new SolutionSink.Collecting();
+        runOne(d0, k, zMax, c0, c1, c2, sink, pool);
+        return sink.solutions();
+    }
+
+    public static void runOne(Models.NumberAndFactors d0, int k, long zMax, long c0, long c1, long c2, SolutionSink sink, @Nullable ForkJoinPool pool) {
+        final var plan = plan(d0, k, zMax, c0, c1, c2);
+        if (null == pool) {
+            Step4.check(plan, sink);
+        } else {
+            Step4.checkParallel(plan, sink, pool);
+        }
+    }
+
+    // Same as below, with the constants for the bucket of d0.
+    static Step4.Plan plan(Models.NumberAndFactors d0, Models.SearchParameters params) {
+        return plan(d0, params, SearchContext.get());
+    }
+
+    static Step4.Plan plan(Models.NumberAndFactors d0, Models.SearchParameters params, SearchContext context) {
+        final var constants = params.constantsFor(d0.number());
+        return plan(d0, params.k(), params.zMax(), constants.c0(), constants.c1(), constants.c2(), context);
+    }
+
+    static Step4.Plan plan(Models.NumberAndFactors d0, int k, long zMax, long c0, long c1, long c2) {
+        return plan(d0, k, zMax, c0, c1, c2, SearchContext.get());
     }
 
-    public static void runOne(Models.NumberAndFactors d0, int k, long zMax, long c0, long c1, long c2) {
+    // Runs steps 1-3 with the scratch of `context`, and prepares everything step 4 needs to check the z for d0.
+    static Step4.Plan plan(Models.NumberAndFactors d0, int k, long zMax, long c0, long c1, long c2, SearchContext context) {
         final var step1Response = Step1.step1(d0, k);
 
         final var d = step1Response.d();
         var Adq = step1Response.Adq();
         var q = step1Response.q();
 
-        final var a = Step2.step2(d, (int) q, k, zMax, c0, c1);
+        // a and b live in the scratch of the context, which is fine as the plan doesn't keep them.
+        final var scratch = context.planner;
+        final var a = Step2.step2(d, (int) q, k, zMax, c0, c1, scratch);
 
-        final var b = Step3.step3(d, a, c2);
+        final var b = Step3.step3(d, a, c2, scratch);
 
         // REMARK: the response from step 1 may overflow as zMax is close to the max Long value.
         // To check, we multiply d0 * a * q and if it overflows, we set q = 1. This still makes
         // `m` large enough such that checking for square candidates is fairly fast.
-        if (null == d0.multiply(a.number() * q)) {
+        if (-1L == Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(d0.number(), a.number() * q)) {
             q = 1;
             Adq = List.of(0L);
         }
 
-        Step4.step4(q, Adq, k, d0, d, a, b, zMax);
+        return Step4.plan(q, Adq, k, d0, d, a, b, zMax);
     }
 }
@@ -0,0 +1,78 @@
+package org.cliu;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Everything a search thread reuses from one d, and one progression of z, to the next: the scratch of steps 2 and 3,
+ * and the buffers of the step 4 walk, sieve and vector kernel. A context is only ever used by the thread that owns it,
+ * so none of it needs synchronization. What's shared between threads is either immutable, like the S_d(p) tables, or
+ * a concurrent cache, like the cube roots mod p in `CubeRoots`.
+ *
+ * Contexts are made per thread on first use, and each thread allocates its own, so they don't share cache lines.
+ * Short-lived threads, like the virtual threads of `PipelinedRunner`, would make a new one per task instead, so they
+ * take one from a `Pool` and pass it explicitly.
+ */
+public class SearchContext {
+    private static final ThreadLocal<SearchContext> perThread = ThreadLocal.withInitial(SearchContext::new);
+
+    final PlannerScratch planner = new PlannerScratch();
+    // z mod Q for each wheel, for the scalar walk.
+    private int[] wheelResidues = new int[16];
+    // For `ProgressionSieve`: the window, and the phase of each aux prime.
+    final long[] sieveWindow = new long[ProgressionSieve.windowWords];
+    private int[] sievePhases = new int[16];
+    // For `VectorWalk`: z mod Q of each lane, wheel after wheel, what each wheel steps by, and the gather indices.
+    private int[] laneResidues = new int[64];
+    private int[] laneSteps = new int[16];
+    private int[] laneIndices = new int[16];
+
+    static SearchContext get() {
+        return perThread.get();
+    }
+
+    /**
+     * Contexts handed from one task to the next. A task takes one, owns it until it gives it back, and the pool never
+     * holds more contexts than there were tasks running at once.
+     */
+    static class Pool {
+        private final ConcurrentLinkedQueue<SearchContext> idle = new ConcurrentLinkedQueue<>();
+
+        SearchContext take() {
+            final var context = idle.poll();
+            return null == context ? new SearchContext() : context;
+        }
+
+        void giveBack(SearchContext context) {
+            idle.add(context);
+        }
+
+        int idle() {
+            return idle.size();
+        }
+    }
+
+    int[] wheelResidues(int n) {
+        if (wheelResidues.length < n) wheelResidues = new int[n];
+        return wheelResidues;
+    }
+
+    int[] sievePhases(int n) {
+        if (sievePhases.length < n) sievePhases = new int[n];
+        return sievePhases;
+    }
+
+    int[] laneResidues(int n) {
+        if (laneResidues.length < n) laneResidues = new int[n];
+        return laneResidues;
+    }
+
+    int[] laneSteps(int n) {
+        if (laneSteps.length < n) laneSteps = new int[n];
+        return laneSteps;
+    }
+
+    int[] laneIndices(int n) {
+        if (laneIndices.length < n) laneIndices = new int[n];
+        return laneIndices;
+    }
+}
@@ -0,0 +1,222 @@
+package org.cliu;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Alternative d0 source to `Enumeration`, for contiguous windows of d. Walks the d in [min, max] in order, in blocks
+ * of `blockSize`, and factors every d of a block with a sieve. Each block starts with rest[i] = d, and every sieving
+ * prime p <= sqrt(max) divides its powers out of the d it hits and records (p, power) for them. Whatever is left of a
+ * d afterwards is 1 or its single prime factor > sqrt(d). The d divisible by 3 are skipped, like in `Enumeration`.
+ *
+ * REMARK: So are the d with a prime factor that doesn't fit in an int, as prime factors are ints everywhere else, from
+ * `Models.NumberAndFactors` to the cube roots of `CubeRoots`. For d close to 3e17 that's most of them. They are
+ * counted by `skippedLargePrimes`, so that a search over a window says how much of it was left out.
+ *
+ * Primes smaller than a block hit it many times, and keep the offset of their next multiple across blocks. Larger
+ * primes hit a block at most once, so each of them waits in the bucket of the next block it hits, and only the primes
+ * hitting a block are looked at when sieving it.
+ *
+ * REMARK: The sieving primes up to sqrt(max), e.g. about 29M primes for d close to 3e17, are shared by all the shards
+ * of a window. Each shard only queues the primes that hit its own window, in a ring of buckets with one per block of
+ * that window, so splitting hands off the upper half of what's left of the window to a new sieve with buckets of its
+ * own size.
+ */
+public class SegmentedSieve implements Spliterator<Models.NumberAndFactors> {
+    // The state of a block fits in L2: 2^14 * (8 bytes of rest + 4 bytes of head) plus a few hits per d.
+    static final int blockSize = 1 << 14;
+    // Smallest window handed off by `trySplit`.
+    static final long minSplitSize = 1L << 20;
+
+    private final int[] sievingPrimes;
+    // Shared by all the shards of a window.
+    private final LongAdder skipped;
+    private final int smallPrimes;
+    private long blockStart;
+    private long max;
+
+    // Offset from `blockStart` of the next multiple of each small prime.
+    private final int[] smallNext;
+    // Buckets of the large primes, by the index of the next block they hit modulo the number of buckets. Each entry is
+    // (prime index << 32) | offset of the multiple in that block.
+    private final long[][] buckets;
+    private final int[] bucketSizes;
+    private long blockIdx;
+
+    // The current block: what's left of each d, and the (prime, power) hits of each d as linked lists.
+    private final long[] rest = new long[blockSize];
+    private final int[] head = new int[blockSize];
+    private long[] hitFactors = new long[4 * blockSize];
+    private int[] hitNext = new int[4 * blockSize];
+    private int hits;
+    private int blockLength;
+    private int position;
+
+    public SegmentedSieve(long min, long max) {
+        this(PrimeSource.primesUpTo(PrimeSource.sqrtFloor(max)), new LongAdder(), Math.max(min, 1), max);
+    }
+
+    private SegmentedSieve(int[] sievingPrimes, LongAdder skipped, long min, long max) {
+        if (max > (long) Integer.MAX_VALUE * Integer.MAX_VALUE) throw new IllegalArgumentException("max is too large: " + max);
+        this.sievingPrimes = sievingPrimes;
+        this.skipped = skipped;
+        this.blockStart = min;
+        this.max = max;
+        var smallPrimes = 0;
+        while (smallPrimes < sievingPrimes.length && sievingPrimes[smallPrimes] < blockSize) smallPrimes++;
+        this.smallPrimes = smallPrimes;
+        this.smallNext = new int[smallPrimes];
+        // A prime is only queued for the blocks of this window, so one bucket per block of the window is enough for
+        // the bucket being emptied to never be refilled, as is one per block up to the largest prime.
+        final var largestPrime = sievingPrimes.length == 0 ? 0 : sievingPrimes[sievingPrimes.length - 1];
+        final var bucketCount = (int) Math.min(largestPrime / blockSize, (max - min) / blockSize) + 2;
+        this.buckets = new long[bucketCount][];
+        this.bucketSizes = new int[bucketCount];
+
+        for (int j = 0; j < sievingPrimes.length; j++) {
+            final var p = sievingPrimes[j];
+            final var offset = Math.floorMod(-min, (long) p);
+            if (j < smallPrimes) {
+                smallNext[j] = (int) offset;
+            } else if (offset <= max - min) {
+                addToBucket(offset / blockSize, j, (int) (offset % blockSize));
+            }
+        }
+        this.blockIdx = 0;
+        this.blockLength = 0;
+        this.position = 0;
+    }
+
+    private void addToBucket(long block, int primeIdx, int offset) {
+        final var b = (int) (block % buckets.length);
+        if (null == buckets[b]) {
+            buckets[b] = new long[16];
+        } else if (bucketSizes[b] == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], 2 * bucketSizes[b]);
+        }
+        buckets[b][bucketSizes[b]++] = ((long) primeIdx << 32) | offset;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Models.NumberAndFactors> action) {
+        while (true) {
+            while (position < blockLength) {
+                final var i = position++;
+                final var d = blockStart + i;
+                if (d % 3 == 0) continue;
+                if (rest[i] > Integer.MAX_VALUE) {
+                    skipped.increment();
+                    continue;
+                }
+                action.accept(factorization(i, d));
+                return true;
+            }
+            if (blockLength > 0) {
+                blockStart += blockLength;
+                blockIdx++;
+            }
+            if (blockStart > max || blockStart < 0) return false;
+            sieveBlock();
+        }
+    }
+
+    private void sieveBlock() {
+        blockLength = (int) Math.min(blockSize, max - blockStart + 1);
+        position = 0;
+        hits = 0;
+        for (int i = 0; i < blockLength; i++) {
+            rest[i] = blockStart + i;
+            head[i] = -1;
+        }
+
+        for (int j = 0; j < smallPrimes; j++) {
+            final var p = sievingPrimes[j];
+            var offset = smallNext[j];
+            // Every d divisible by 3 is skipped, so there's no need to factor them.
+            if (p != 3) {
+                for (; offset < blockLength; offset += p) {
+                    divideOut(offset, p);
+                }
+            } else {
+                while (offset < blockLength) offset += p;
+            }
+            smallNext[j] = offset - blockLength;
+        }
+
+        final var b = (int) (blockIdx % buckets.length);
+        final var bucket = buckets[b];
+        final var size = bucketSizes[b];
+        bucketSizes[b] = 0;
+        for (int e = 0; e < size; e++) {
+            final var primeIdx = (int) (bucket[e] >>> 32);
+            final var offset = (int) bucket[e];
+            final var p = sievingPrimes[primeIdx];
+            // After a split shrinks the window, the last block may be shorter than the multiples queued for it.
+            if (offset >= blockLength) continue;
+            divideOut(offset, p);
+            final long next = (long) offset + p;
+            if (blockStart + next <= max) {
+                // The bucket being emptied is only refilled by primes that come back after a full round of buckets.
+                addToBucket(blockIdx + next / blockSize, primeIdx, (int) (next % blockSize));
+            }
+        }
+    }
+
+    private void divideOut(int offset, int p) {
+        var power = 0;
+        var r = rest[offset];
+        do {
+            r /= p;
+            power++;
+        } while (r % p == 0);
+        rest[offset] = r;
+        if (hits == hitFactors.length) {
+            hitFactors = Arrays.copyOf(hitFactors, 2 * hits);
+            hitNext = Arrays.copyOf(hitNext, 2 * hits);
+        }
+        hitFactors[hits] = Models.NumberAndFactors.pack(p, power);
+        hitNext[hits] = head[offset];
+        head[offset] = hits++;
+    }
+
+    private Models.NumberAndFactors factorization(int i, long d) {
+        var size = rest[i] > 1 ? 1 : 0;
+        for (int h = head[i]; h >= 0; h = hitNext[h]) size++;
+        final var factors = new long[size];
+        size = 0;
+        for (int h = head[i]; h >= 0; h = hitNext[h]) factors[size++] = hitFactors[h];
+        if (rest[i] > 1) factors[size++] = Models.NumberAndFactors.pack((int) rest[i], 1);
+        return new Models.NumberAndFactors(d, factors, size);
+    }
+
+    @Override
+    @Nullable
+    public Spliterator<Models.NumberAndFactors> trySplit() {
+        // The rest of the current block stays here, the split takes whole blocks.
+        final var from = blockStart + Math.max(blockLength, 0);
+        if (max - from < 2 * minSplitSize) return null;
+        final var mid = from + Math.max(1, (max - from) / 2 / blockSize) * blockSize - 1;
+        final var split = new SegmentedSieve(sievingPrimes, skipped, mid + 1, max);
+        max = mid;
+        return split;
+    }
+
+    // Number of d not divisible by 3 skipped so far by this sieve and its splits, as they have a prime factor > 2^31.
+    public long skippedLargePrimes() {
+        return skipped.sum();
+    }
+
+    @Override
+    public long estimateSize() {
+        return Math.max(0, max - blockStart + 1 - position) * 2 / 3;
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL;
+    }
+}
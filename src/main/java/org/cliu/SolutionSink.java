@@ -0,0 +1,49 @@
+package org.cliu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Receives the solutions found by step 4. Finding a solution doesn't stop the search, so every solution in the
+ * searched range gets reported. Sinks may be shared by several search threads.
+ */
+public interface SolutionSink {
+    void accept(Models.Solution solution);
+
+    // Scans poll this between chunks of z, and stop early once it returns true.
+    default boolean isDone() {
+        return false;
+    }
+
+    // Keeps every solution it receives.
+    class Collecting implements SolutionSink {
+        private final ConcurrentLinkedQueue<Models.Solution> solutions = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void accept(Models.Solution solution) {
+            solutions.add(solution);
+        }
+
+        public List<Models.Solution> solutions() {
+            return new ArrayList<>(solutions);
+        }
+    }
+
+    // Stops the search once a solution is found, e.g. when only checking whether a d has any solution.
+    class First extends Collecting {
+        // Set after the solution is added, as walks poll `isDone` far more often than solutions are found.
+        private volatile boolean done;
+
+        @Override
+        public void accept(Models.Solution solution) {
+            super.accept(solution);
+            done = true;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package org.cliu;
+
+import com.google.common.math.BigIntegerMath;
+
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * The square test of step 4, whether 3d(4|k - z^3| - d^3) is a positive square, without allocating.
+ *
+ * Most values are rejected from their residues mod 64, 63, 65 and 11, where only 12, 16, 21 and 6 classes are
+ * squares, so about 1 in 120 non-squares gets past them. These only need z and d mod 64 * 63 * 65 * 11, which fits in
+ * a long along with the products. The rest are checked exactly, in 128 bits with `Math.multiplyHigh` when the value
+ * is below 2^122, so that its square root fits in a long and is found from a double estimate plus a correction. Up to
+ * 2^252 and d < 2^61, which covers the search bounds (d up to 3e17 and |z| up to 5e18, about 2^248), the same is done
+ * in four limbs with a root in two. Larger values go through BigInteger.
+ */
+final class SquareCheck {
+    private static final long filterModulus = 64 * 63 * 65 * 11;
+    private static final boolean[] squaresMod63 = squaresMod(63);
+    private static final boolean[] squaresMod65 = squaresMod(65);
+    private static final boolean[] squaresMod11 = squaresMod(11);
+    // Values below this go through the 128-bit path.
+    private static final double fixedWidthLimit = 0x1p122;
+    private static final long maxFixedWidthD = 1L << 40;
+    // Values below this, and not below the limits above, go through the 256-bit path.
+    private static final double wideLimit = 0x1p252;
+    private static final long maxWideD = 1L << 61;
+
+    private SquareCheck() {}
+
+    static boolean isSquareCandidate(long d, long z, int k) {
+        final var sign = signOfKMinusZCubed(z, k);
+        if (!passesFilters(d, z, k, sign)) return false;
+        final var absZ = Math.abs((double) z);
+        // An upper bound of the value.
+        final var bound = 12.0 * d * (absZ * absZ * absZ + Math.abs((double) k));
+        if (d < maxFixedWidthD && bound < fixedWidthLimit) return isSquareFixedWidth(d, z, k);
+        if (d < maxWideD && bound < wideLimit && z != Long.MIN_VALUE) return isSquareWide(d, z, k);
+        return isSquareBigInteger(d, z, k);
+    }
+
+    // Sign of k - z^3, which is the sign of -z as soon as |z^3| > |k|.
+    private static int signOfKMinusZCubed(long z, int k) {
+        if (z > 1 << 20 || z < -(1 << 20)) return z > 0 ? -1 : 1;
+        return Long.signum(k - z * z * z);
+    }
+
+    // Whether 3d(4|k - z^3| - d^3) can be a square, from its residues.
+    private static boolean passesFilters(long d, long z, int k, int sign) {
+        final var zMod = Math.floorMod(z, filterModulus);
+        final var dMod = Math.floorMod(d, filterModulus);
+        final var zCubed = zMod * zMod % filterModulus * zMod % filterModulus;
+        final var dCubed = dMod * dMod % filterModulus * dMod % filterModulus;
+        final var absKMinusZCubed = Math.floorMod(sign * (k - zCubed), filterModulus);
+        final var c = Math.floorMod(3 * dMod % filterModulus * ((4 * absKMinusZCubed - dCubed) % filterModulus), filterModulus);
+        return (GenericUtils.goodMask << c) < 0
+                && squaresMod63[(int) (c % 63)]
+                && squaresMod65[(int) (c % 65)]
+                && squaresMod11[(int) (c % 11)];
+    }
+
+    // For values below 2^122, with d < 2^40.
+    private static boolean isSquareFixedWidth(long d, long z, int k) {
+        // |k - z^3|, as hi * 2^64 + lo.
+        long hi, lo;
+        if (Math.abs(z) <= 1 << 20) {
+            hi = 0;
+            lo = Math.abs(k - z * z * z);
+        } else {
+            // |z|^3 - sign(z) k, as |z^3| > |k|.
+            final var absZ = Math.abs(z);
+            final var zSquared = absZ * absZ;
+            hi = unsignedMultiplyHigh(zSquared, absZ) + Math.multiplyHigh(absZ, absZ) * absZ;
+            lo = zSquared * absZ;
+            final long c = z > 0 ? -k : k;
+            final var sum = lo + c;
+            hi += (c >> 63) + (Long.compareUnsigned(sum, lo) < 0 ? 1 : 0);
+            lo = sum;
+        }
+        // u = 4|k - z^3| - d^3.
+        hi = hi << 2 | lo >>> 62;
+        lo <<= 2;
+        // d^2 takes up to 80 bits, so its high limb is needed for d^3 as soon as d >= 2^32.
+        final var dSquaredLo = d * d;
+        final var dSquaredHi = Math.multiplyHigh(d, d);
+        final var dCubedLo = dSquaredLo * d;
+        final var dCubedHi = unsignedMultiplyHigh(dSquaredLo, d) + dSquaredHi * d;
+        final var uLo = lo - dCubedLo;
+        final var uHi = hi - dCubedHi - (Long.compareUnsigned(lo, dCubedLo) < 0 ? 1 : 0);
+        if (uHi < 0 || (uHi == 0 && uLo == 0)) return false;
+        // v = 3d u.
+        final var threeD = 3 * d;
+        final var vLo = uLo * threeD;
+        final var vHi = unsignedMultiplyHigh(uLo, threeD) + uHi * threeD;
+
+        // The double estimate is within about 2^8 of the root, and correcting it with the exact v - s^2 leaves it
+        // within 1.
+        var s = (long) Math.sqrt(vHi * 0x1p64 + unsignedToDouble(vLo));
+        final var rLo = vLo - s * s;
+        final var rHi = vHi - Math.multiplyHigh(s, s) - (Long.compareUnsigned(vLo, s * s) < 0 ? 1 : 0);
+        s += (long) ((rHi * 0x1p64 + unsignedToDouble(rLo)) / (2.0 * s + 1));
+        while (compareSquare(s, vHi, vLo) > 0) s--;
+        while (compareSquare(s + 1, vHi, vLo) <= 0) s++;
+        return compareSquare(s, vHi, vLo) == 0;
+    }
+
+    // For values below 2^252, with d < 2^61. The value v = v3 * 2^192 + v2 * 2^128 + v1 * 2^64 + v0 and its square
+    // root s = s1 * 2^64 + s0, below 2^126, are built the same way as in `isSquareFixedWidth`, limb by limb.
+    private static boolean isSquareWide(long d, long z, int k) {
+        // |k - z^3|, as a2 * 2^128 + a1 * 2^64 + a0.
+        long a2, a1, a0;
+        if (Math.abs(z) <= 1 << 20) {
+            a2 = 0;
+            a1 = 0;
+            a0 = Math.abs(k - z * z * z);
+        } else {
+            final var absZ = Math.abs(z);
+            final var zSquaredHi = Math.multiplyHigh(absZ, absZ);
+            final var zSquaredLo = absZ * absZ;
+            final var mid = zSquaredHi * absZ;
+            a0 = zSquaredLo * absZ;
+            a1 = unsignedMultiplyHigh(zSquaredLo, absZ) + mid;
+            a2 = Math.multiplyHigh(zSquaredHi, absZ) + (Long.compareUnsigned(a1, mid) < 0 ? 1 : 0);
+            // |z|^3 - sign(z) k, as |z^3| > |k|.
+            final long c = z > 0 ? -k : k;
+            if (c >= 0) {
+                a0 += c;
+                if (Long.compareUnsigned(a0, c) < 0 && ++a1 == 0) a2++;
+            } else {
+                final var borrow = Long.compareUnsigned(a0, -c) < 0;
+                a0 += c;
+                if (borrow && a1-- == 0) a2--;
+            }
+        }
+        // u = 4|k - z^3| - d^3, below 2^191.
+        a2 = a2 << 2 | a1 >>> 62;
+        a1 = a1 << 2 | a0 >>> 62;
+        a0 <<= 2;
+        final var dSquaredHi = Math.multiplyHigh(d, d);
+        final var dSquaredLo = d * d;
+        final var dCubedMid = dSquaredHi * d;
+        final var dCubed0 = dSquaredLo * d;
+        final var dCubed1 = unsignedMultiplyHigh(dSquaredLo, d) + dCubedMid;
+        final var dCubed2 = Math.multiplyHigh(dSquaredHi, d) + (Long.compareUnsigned(dCubed1, dCubedMid) < 0 ? 1 : 0);
+        final var u0 = a0 - dCubed0;
+        var borrow = Long.compareUnsigned(a0, dCubed0) < 0 ? 1 : 0;
+        final var u1 = a1 - dCubed1 - borrow;
+        borrow = Long.compareUnsigned(a1, dCubed1) < 0 || (borrow == 1 && a1 == dCubed1) ? 1 : 0;
+        final var u2 = a2 - dCubed2 - borrow;
+        if (u2 < 0 || (u2 == 0 && u1 == 0 && u0 == 0)) return false;
+        // v = 3d u.
+        final var threeD = 3 * d;
+        final var p1 = u1 * threeD;
+        final var p2 = u2 * threeD;
+        final var v0 = u0 * threeD;
+        final var v1 = p1 + unsignedMultiplyHigh(u0, threeD);
+        final var v2 = p2 + unsignedMultiplyHigh(u1, threeD) + (Long.compareUnsigned(v1, p1) < 0 ? 1 : 0);
+        final var v3 = Math.multiplyHigh(u2, threeD) + (Long.compareUnsigned(v2, p2) < 0 ? 1 : 0);
+
+        // The double estimate is within about 2^74 of the root. Each correction with the exact v - s^2 squares the
+        // relative error, down to the rounding of the correction itself, so two of them leave it within a few units.
+        final var estimate = Math.sqrt(v3 * 0x1p192 + unsignedToDouble(v2) * 0x1p128 + unsignedToDouble(v1) * 0x1p64 + unsignedToDouble(v0));
+        var s1 = (long) (estimate * 0x1p-64);
+        var s0 = toUnsignedLong(estimate - s1 * 0x1p64);
+        for (int i = 0; i < 2; i++) {
+            final var correction = Math.rint(residual(s1, s0, v3, v2, v1, v0) / (2 * (s1 * 0x1p64 + unsignedToDouble(s0))));
+            final var magnitude = Math.abs(correction);
+            final var hi = (long) (magnitude * 0x1p-64);
+            final var lo = toUnsignedLong(magnitude - hi * 0x1p64);
+            if (correction >= 0) {
+                s0 += lo;
+                s1 += hi + (Long.compareUnsigned(s0, lo) < 0 ? 1 : 0);
+            } else {
+                s1 -= hi + (Long.compareUnsigned(s0, lo) < 0 ? 1 : 0);
+                s0 -= lo;
+            }
+        }
+        while (residual(s1, s0, v3, v2, v1, v0) < 0) {
+            if (s0-- == 0) s1--;
+        }
+        while (true) {
+            final var next0 = s0 + 1;
+            final var next1 = s1 + (next0 == 0 ? 1 : 0);
+            if (residual(next1, next0, v3, v2, v1, v0) < 0) break;
+            s0 = next0;
+            s1 = next1;
+        }
+        return residual(s1, s0, v3, v2, v1, v0) == 0;
+    }
+
+    // v - s^2, rounded to a double but with its exact sign, for s = s1 * 2^64 + s0 below 2^126.
+    private static double residual(long s1, long s0, long v3, long v2, long v1, long v0) {
+        // s^2 = s1^2 * 2^128 + 2 s1 s0 * 2^64 + s0^2, where 2 s1 s0 < 2^127.
+        final var cross = s1 * s0;
+        final var crossHi = unsignedMultiplyHigh(s1, s0);
+        final var twiceCross0 = cross << 1;
+        final var twiceCross1 = crossHi << 1 | cross >>> 63;
+        final var q0 = s0 * s0;
+        final var q1 = unsignedMultiplyHigh(s0, s0) + twiceCross0;
+        final var carry1 = Long.compareUnsigned(q1, twiceCross0) < 0 ? 1 : 0;
+        var q2 = s1 * s1 + twiceCross1;
+        var carry2 = Long.compareUnsigned(q2, twiceCross1) < 0 ? 1 : 0;
+        q2 += carry1;
+        if (carry1 == 1 && q2 == 0) carry2 = 1;
+        final var q3 = Math.multiplyHigh(s1, s1) + carry2;
+
+        final var r0 = v0 - q0;
+        var borrow = Long.compareUnsigned(v0, q0) < 0 ? 1 : 0;
+        final var r1 = v1 - q1 - borrow;
+        borrow = Long.compareUnsigned(v1, q1) < 0 || (borrow == 1 && v1 == q1) ? 1 : 0;
+        final var r2 = v2 - q2 - borrow;
+        borrow = Long.compareUnsigned(v2, q2) < 0 || (borrow == 1 && v2 == q2) ? 1 : 0;
+        final var r3 = v3 - q3 - borrow;
+        if (r3 >= 0) return r3 * 0x1p192 + unsignedToDouble(r2) * 0x1p128 + unsignedToDouble(r1) * 0x1p64 + unsignedToDouble(r0);
+        // Negates the two's complement, so that the limbs don't cancel out in the double.
+        final var n0 = -r0;
+        var carry = r0 == 0 ? 1 : 0;
+        final var n1 = ~r1 + carry;
+        carry &= r1 == 0 ? 1 : 0;
+        final var n2 = ~r2 + carry;
+        carry &= r2 == 0 ? 1 : 0;
+        final var n3 = ~r3 + carry;
+        return -(n3 * 0x1p192 + unsignedToDouble(n2) * 0x1p128 + unsignedToDouble(n1) * 0x1p64 + unsignedToDouble(n0));
+    }
+
+    // Compares s^2 with the 128 bit vHi * 2^64 + vLo, for 0 <= s < 2^63.
+    private static int compareSquare(long s, long vHi, long vLo) {
+        final var squareHi = Math.multiplyHigh(s, s);
+        if (squareHi != vHi) return Long.compare(squareHi, vHi);
+        return Long.compareUnsigned(s * s, vLo);
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    private static double unsignedToDouble(long x) {
+        return x >= 0 ? x : (double) (x >>> 1) * 2.0;
+    }
+
+    // For an integral x in [0, 2^64).
+    private static long toUnsignedLong(double x) {
+        return x >= 0x1p63 ? (long) (x - 0x1p63) | Long.MIN_VALUE : (long) x;
+    }
+
+    // The original test, for values too large for the fixed-width paths.
+    static boolean isSquareBigInteger(long d, long z, int k) {
+        final var threeD = BigInteger.valueOf(3 * d);
+        final var zCubed = BigInteger.valueOf(z).pow(3);
+        final var dCubed = BigInteger.valueOf(d).pow(3);
+        final var absKMinusZCubed = BigInteger.valueOf(k).subtract(zCubed).abs();
+        final var candidate = threeD.multiply(BigInteger.valueOf(4).multiply(absKMinusZCubed).subtract(dCubed));
+        return candidate.signum() == 1 && BigIntegerMath.sqrt(candidate, RoundingMode.FLOOR).pow(2).equals(candidate);
+    }
+
+    private static boolean[] squaresMod(int n) {
+        final var squares = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            squares[i * i % n] = true;
+        }
+        return squares;
+    }
+}
@@ -1,7 +0,0 @@
-package org.cliu;
-
-public class SquareFoundException extends RuntimeException {
-    public SquareFoundException(String msg) {
-        super(msg);
-    }
-}
@@ -0,0 +1,93 @@
+package org.cliu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The sets S_d(p) of step 4 for the aux primes p in `Constants.A`, for any k: the z mod p for which
+ * 3d(4s(z^3 - k) - d^3) is a square mod p, where s = -1 when x + y > 0 and 1 otherwise. They only depend on d mod p
+ * and d mod 3, so each k has one table, built on first use with the primes in parallel, or read from the
+ * `PrecomputedTables` of k when there are some.
+ *
+ * Each S_d(p) is a bitset of p bits, 4 words at most, so all of A takes under 1 MB per k. The z of S_d(p) and
+ * its size are read off the bits.
+ *
+ * When k = +-3 mod 9, s = eps (d / 3) with k = 3 eps mod 9, see section 3.1 of https://arxiv.org/pdf/2007.01209.pdf.
+ * For other k the sign isn't pinned down by d, so S_d(p) takes both.
+ */
+public class SsubdTables {
+    private static final ConcurrentHashMap<Integer, SsubdTables> byK = new ConcurrentHashMap<>();
+
+    // rows[i][3 * (d mod p) + d mod 3] is S_d(p) for p = A[i].
+    final long[][][] rows;
+
+    SsubdTables(long[][][] rows) {
+        this.rows = rows;
+    }
+
+    static SsubdTables of(int k) {
+        return byK.computeIfAbsent(k, key -> {
+            final var saved = PrecomputedTables.saved(key);
+            if (null != saved) return saved.ssubdTables();
+            final var rows = new long[Constants.A.size()][][];
+            IntStream.range(0, Constants.A.size()).parallel().forEach(i -> rows[i] = rowsFor(key, Constants.A.get(i)));
+            return new SsubdTables(rows);
+        });
+    }
+
+    // S_d(p) as a bitset, for p in A.
+    long[] row(long dModP, long dMod3, long prime) {
+        return rows[Constants.primeToIndexLookup(prime)][3 * (int) dModP + (int) dMod3];
+    }
+
+    static boolean contains(long[] row, long z) {
+        return (row[(int) (z >>> 6)] & (1L << z)) != 0;
+    }
+
+    static int size(long[] row) {
+        var size = 0;
+        for (var word : row) size += Long.bitCount(word);
+        return size;
+    }
+
+    static List<Long> values(long[] row) {
+        final var values = new ArrayList<Long>(size(row));
+        for (int w = 0; w < row.length; w++) {
+            for (var word = row[w]; word != 0; word &= word - 1) {
+                values.add((long) (w << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return values;
+    }
+
+    private static long[][] rowsFor(int k, int p) {
+        final var squares = new boolean[p];
+        for (long i = 0; i < p; i++) {
+            squares[(int) (i * i % p)] = true;
+        }
+        final var kModP = Math.floorMod(k, p);
+        final var pinned = Math.floorMod(k, 9) == 3 || Math.floorMod(k, 9) == 6;
+        final var rows = new long[3 * p][];
+        for (long dModP = 0; dModP < p; dModP++) {
+            final var threeD = 3 * dModP % p;
+            final var dCubed = dModP * dModP % p * dModP % p;
+            for (int dMod3 = 0; dMod3 < 3; dMod3++) {
+                final var row = new long[(p + 63) >>> 6];
+                for (long z = 0; z < p; z++) {
+                    // 4(z^3 - k) mod p.
+                    final var fourZCubedMinusK = 4 * Math.floorMod(z * z % p * z - kModP, (long) p) % p;
+                    var admissible = false;
+                    for (int s = -1; s <= 1; s += 2) {
+                        if (pinned && dMod3 != 0 && s != Constants.getEps(k) * (dMod3 == 2 ? -1 : 1)) continue;
+                        admissible |= squares[(int) Math.floorMod(threeD * (s * fourZCubedMinusK - dCubed), (long) p)];
+                    }
+                    if (admissible) row[(int) (z >>> 6)] |= 1L << z;
+                }
+                rows[3 * (int) dModP + dMod3] = row;
+            }
+        }
+        return rows;
+    }
+}
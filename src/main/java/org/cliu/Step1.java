@@ -15,10 +15,9 @@ public class Step1 {
         // For each positive divisor d1 of k/3 with gcd(d1, k/d1) = 1, set d := d0d1 and let Ad(q)
         //be the set of z + qZ for which (d, z) is admissible.
         if (k == 3) {
-            return new Step1Response(d0.primeFactors().containsKey(2) ? 81 : 162, d0, Utils.cubicReciprocityConstraint(d0, k));
+            return new Step1Response(d0.hasFactor(2) ? 81 : 162, d0, Utils.cubicReciprocityConstraint(d0, k));
         } else {
-            // We don't support using cubic reciprocity constraints for k != 3 yet, need more research.
-            return new Step1Response(1, d0, List.of(0L));
+            return new Step1Response(AdmissibleResidues.modulus(d0.number()), d0, Utils.cubicReciprocityConstraint(d0, k));
         }
     }
 }
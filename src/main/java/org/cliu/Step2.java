@@ -1,12 +1,6 @@
 package org.cliu;
 
-import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
-import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
-import org.apache.commons.math3.util.Pair;
-
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Step2 {
     /**
@@ -16,26 +10,75 @@ public class Step2 {
      * candidate values to check.
      */
     public static Models.NumberAndFactors step2(Models.NumberAndFactors d0, int q, int k, long zMax, long c0, long c1) {
+        return step2(d0, q, k, zMax, c0, c1, new PlannerScratch()).copy();
+    }
+
+    // Same as above, but returns `scratch.a`, without allocating.
+    static Models.NumberAndFactors step2(Models.NumberAndFactors d0, int q, int k, long zMax, long c0, long c1, PlannerScratch scratch) {
         // Set a := 1, and if c1qd0 < zmax then order the p |- d in A by log #Sd(p)/ log p, and while
         //c0qd0pa < zmax replace a by pa, where p is the next prime in the ordering.
-        var a = new Models.NumberAndFactors(1L, new Int2IntArrayMap(8));
-        var c1Prod = d0.multiply(c1 * q);
-        if (c1Prod == null || c1Prod.number() > zMax) return a;
-
-        final List<Pair<Integer, Double>> logSquareOverLogP = new ArrayList<>();
-        for (var p: Constants.A) {
-            if (d0.primeFactors().containsKey(p.intValue())) continue;
-            final var Sdp = Math.log(Utils.SsubdP(d0.number(), p.intValue(), k).size()) / Math.log(p.intValue());
-            logSquareOverLogP.add(new Pair<>(p.intValue(), Sdp));
+        final var a = scratch.a;
+        PlannerScratch.reset(a);
+        final var c1Prod = Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(d0.number(), c1 * q);
+        if (c1Prod == -1L || c1Prod > zMax) return a;
+
+        // Insertion sort by ratio, which keeps primes with equal ratios in the order of A like a stable sort.
+        final var ratios = LogRatios.of(k);
+        final var d = d0.number();
+        final var d0Mod3 = (int) Math.floorMod(d, 3);
+        var size = 0;
+        for (int i = 0; i < Constants.A.size(); i++) {
+            final var p = Constants.A.get(i);
+            if (d0.hasFactor(p)) continue;
+            final var ratio = ratios.ratio(i, (int) Math.floorMod(d, (long) p), d0Mod3);
+            var j = size++;
+            for (; j > 0 && scratch.ratios[j - 1] > ratio; j--) {
+                scratch.ratios[j] = scratch.ratios[j - 1];
+                scratch.order[j] = scratch.order[j - 1];
+            }
+            scratch.ratios[j] = ratio;
+            scratch.order[j] = i;
         }
-        logSquareOverLogP.sort(Comparator.comparing(Pair::getSecond));
 
-        for (int i=0;i<logSquareOverLogP.size();i++) {
-            final var prime = logSquareOverLogP.get(i);
-            var c0Prod = d0.multiply(c0 * prime.getFirst() * a.number());
-            if (null == c0Prod || c0Prod.number() > zMax || null == a.multiply(prime.getFirst())) break;
-            a = a.multiply(prime.getFirst());
+        for (int i = 0; i < size; i++) {
+            final long prime = Constants.A.get(scratch.order[i]);
+            final var c0Prod = Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(d, c0 * prime * a.number());
+            if (c0Prod == -1L || c0Prod > zMax || Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(a.number(), prime) == -1L) break;
+            a.multiplyMutable(prime);
         }
         return a;
     }
+
+    /**
+     * log |S_d(p)| / log p for each p in A, which only depends on k, d mod p and d mod 3. Computed once per k instead
+     * of boxing S_d(p) for every d.
+     */
+    static class LogRatios {
+        private static final ConcurrentHashMap<Integer, LogRatios> byK = new ConcurrentHashMap<>();
+
+        // Indexed by the index of p in A, then by 3 * (d mod p) + d mod 3.
+        private final double[][] ratios = new double[Constants.A.size()][];
+
+        private LogRatios(int k) {
+            for (int i = 0; i < Constants.A.size(); i++) {
+                final int p = Constants.A.get(i);
+                ratios[i] = new double[3 * p];
+                for (int dModP = 0; dModP < p; dModP++) {
+                    // S_d(p) is only defined for d not divisible by 3.
+                    for (int dMod3 = 1; dMod3 < 3; dMod3++) {
+                        final var row = Utils.isInSSubDCache(dModP, dMod3, p, k);
+                        ratios[i][3 * dModP + dMod3] = Math.log(SsubdTables.size(row)) / Math.log(p);
+                    }
+                }
+            }
+        }
+
+        static LogRatios of(int k) {
+            return byK.computeIfAbsent(k, LogRatios::new);
+        }
+
+        double ratio(int primeIdx, int dModP, int dMod3) {
+            return ratios[primeIdx][3 * dModP + dMod3];
+        }
+    }
 }
@@ -1,8 +1,5 @@
 package org.cliu;
 
-import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
-import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
-
 public class Step3 {
     /**
      * Computes step 3 of Algorithm 3.5 described in https://arxiv.org/pdf/2007.01209.pdf
@@ -11,11 +8,17 @@ public class Step3 {
      * ordering computed in the previous step or a fixed order."
      */
     public static Models.NumberAndFactors step3(Models.NumberAndFactors d, Models.NumberAndFactors a, long c2) {
-        var b = new Models.NumberAndFactors(1L, new Int2IntArrayMap(8));
+        return step3(d, a, c2, new PlannerScratch()).copy();
+    }
+
+    // Same as above, but returns `scratch.b`, without allocating.
+    static Models.NumberAndFactors step3(Models.NumberAndFactors d, Models.NumberAndFactors a, long c2, PlannerScratch scratch) {
+        final var b = scratch.b;
+        PlannerScratch.reset(b);
         for (int i = 0; i< Constants.A.size(); i++) {
-            if (b.primeFactors().size() > c2) break;
+            if (b.size() > c2) break;
             final var prime = Constants.A.get(i);
-            if (d.primeFactors().containsKey(prime) || a.primeFactors().containsKey(prime)) continue;
+            if (d.hasFactor(prime) || a.hasFactor(prime)) continue;
             if (-1 == Models.NumberAndFactors.multiplyPositivesOrReturnNegativeOne(b.number(), prime.longValue())) continue;
             b.multiplyMutable(prime);
         }
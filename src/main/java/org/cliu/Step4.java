@@ -2,34 +2,64 @@ package org.cliu;
 
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import org.apache.commons.math3.util.Pair;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Step4 {
+    // Stands for a residue that isn't known yet. No z with |z| < zMax can take this value.
+    static final long noResidue = Long.MIN_VALUE;
 
     /**
      * Computes step 4 of Algorithm 3.5 described in https://arxiv.org/pdf/2007.01209.pdf
      * First, uses CRT to compute the set Z_m identified Z/mZ.
      *
-     * Second, keep adding multiples of `m` for all the candidates with |z| <= z_max.
+     * Second, keep adding multiples of `m` for all the candidates with |z| <= z_max. Every solution found is handed to
+     * `sink`, and the search carries on.
      */
-    public static void step4(long q, List<Long> Adq, int k, Models.NumberAndFactors d0, Models.NumberAndFactors d, Models.NumberAndFactors a, Models.NumberAndFactors b, long zMax) {
-        var crtResponse = step4_CRT(q, Adq, k, d0, d, a);
-        var m = crtResponse.m();
-        var Zm = crtResponse.Zm();
-        step4_ZmCheck(d, Zm, b, m, k, zMax);
+    public static void step4(long q, List<Long> Adq, int k, Models.NumberAndFactors d0, Models.NumberAndFactors d, Models.NumberAndFactors a, Models.NumberAndFactors b, long zMax, SolutionSink sink) {
+        check(plan(q, Adq, k, d0, d, a, b, zMax), sink);
+    }
+
+    /**
+     * Same as `step4`, but splits the search for this single d across the threads of `pool`. This is useful for
+     * small d (e.g d=5), where one d is the whole job.
+     */
+    public static void step4Parallel(long q, List<Long> Adq, int k, Models.NumberAndFactors d0, Models.NumberAndFactors d, Models.NumberAndFactors a, Models.NumberAndFactors b, long zMax, SolutionSink sink, ForkJoinPool pool) {
+        checkParallel(plan(q, Adq, k, d0, d, a, b, zMax), sink, pool);
+    }
+
+    // Everything needed to scan the z of one d, prepared ahead of the scan: the CRT moduli and residues that make up
+    // Z_m, and the aux prime lookups. Preparing a plan allocates, while checking it is pure CPU.
+    record Plan(Models.NumberAndFactors d, long m, Pair<Models.NumberAndPower, List<Long>>[] numberToResidues, CrtBasis crt, AuxPrimeLookups lookups, int k, long zMax) {}
+
+    static Plan plan(long q, List<Long> Adq, int k, Models.NumberAndFactors d0, Models.NumberAndFactors d, Models.NumberAndFactors a, Models.NumberAndFactors b, long zMax) {
+        var m = d0.number() * q * a.number();
+        final var numberToResidues = step4_CRTResidues(q, Adq, k, d0, d, a);
+        return new Plan(d, m, numberToResidues, CrtBasis.of(numberToResidues), auxPrimeLookups(d, b, m, k, zMax), k, zMax);
+    }
+
+    static void check(Plan plan, SolutionSink sink) {
+        step4_ZmCheck(plan.d(), plan.crt().iterator(0, plan.crt().size()), plan.lookups(), plan.k(), plan.zMax(), sink);
     }
 
     record Step4CrtResponse(long m, LongIterator Zm) {}
 
     public static Step4CrtResponse step4_CRT(long q, List<Long> Adq, int k, Models.NumberAndFactors d0, Models.NumberAndFactors d, Models.NumberAndFactors a) {
         var m = d0.number() * q * a.number();
+        return new Step4CrtResponse(m, Utils.crtEnumeration(step4_CRTResidues(q, Adq, k, d0, d, a)));
+    }
 
+    // The moduli and the residues allowed for each of them, which make up Z_m through CRT.
+    static Pair<Models.NumberAndPower, List<Long>>[] step4_CRTResidues(long q, List<Long> Adq, int k, Models.NumberAndFactors d0, Models.NumberAndFactors d, Models.NumberAndFactors a) {
         // Hard-coded aux primes
-        final var numberToResidues = new Pair[a.primeFactors.size() + d0.primeFactors().size() + 1];
+        final Pair<Models.NumberAndPower, List<Long>>[] numberToResidues = new Pair[a.size() + d0.size() + 1];
         var i = 0;
-        for (var pEntry:a.fastIter()) {
-            numberToResidues[i] = new Pair<>(new Models.NumberAndPower(pEntry.getIntKey(), 1, pEntry.getIntKey()), Utils.SsubdP(d.number(), pEntry.getIntKey(), k));
+        for (int j = 0; j < a.size(); j++) {
+            final var prime = a.prime(j);
+            numberToResidues[i] = new Pair<>(new Models.NumberAndPower(prime, 1, prime), Utils.SsubdP(d.number(), prime, k));
             i++;
         }
 
@@ -38,72 +68,240 @@ public class Step4 {
         i++;
 
         // Candidate power cube roots.
-        for (var primeFactorEntry:d0.fastIter()) {
-            final var power = d0.primeFactors().get(primeFactorEntry.getIntKey());
-            final var pair = new Pair<>(new Models.NumberAndPower(primeFactorEntry.getIntKey(), power, (long)Math.pow(primeFactorEntry.getIntKey(), power)), Utils.henselCuberoot(primeFactorEntry.getIntKey(), power, k));
+        for (int j = 0; j < d0.size(); j++) {
+            final var prime = d0.prime(j);
+            final var power = d0.power(j);
+            final var pair = new Pair<>(new Models.NumberAndPower(prime, power, (long)Math.pow(prime, power)), Utils.henselCuberoot(prime, power, k));
             numberToResidues[i] = pair;
             i++;
         }
-        return new Step4CrtResponse(m, Utils.crtEnumeration(numberToResidues));
+        return numberToResidues;
     }
 
-    static long[][] ssubdCandidateLookupTable = new long[251][];
-    static long[] multiplierMModBCache = new long[251];
+    // Lookups for the aux primes in `b` that are shared by all the z checked for a d, with a `FastMod` for each of
+    // them, in the same order, and the same filters merged into `wheels` for the walk. When the progressions are long
+    // enough, they are sieved with `sieve` rather than walked.
+    record AuxPrimeLookups(int[] primesInB, long[][] ssubdCandidateLookupTable, long[] multiplierMModBCache, FastMod[] reducers, AuxPrimeWheels wheels, long multiplierM, @Nullable ProgressionSieve sieve) {}
 
-    public static void step4_ZmCheck(Models.NumberAndFactors d, LongIterator Zm, Models.NumberAndFactors b, long m, int k, long zMax) {
-//        final var start = Instant.now();
-        final var primesInB = b.primeFactors().keySet();
-//        var count = 0;
+    // Picks the sieve or the walk for the z of a d, from the length of the progressions, zMax / m. Both cost about
+    // the same per residue besides that, so |Z_m| doesn't change which one is faster.
+    static AuxPrimeLookups auxPrimeLookups(Models.NumberAndFactors d, Models.NumberAndFactors b, long m, int k, long zMax) {
+        final var lookups = auxPrimeLookups(d, b, m, k);
+        if (!ProgressionSieve.isWorthIt(m, zMax)) return lookups;
+        final var sieve = ProgressionSieve.of(lookups.primesInB(), lookups.ssubdCandidateLookupTable(), lookups.multiplierMModBCache(), lookups.reducers());
+        return new AuxPrimeLookups(lookups.primesInB(), lookups.ssubdCandidateLookupTable(), lookups.multiplierMModBCache(), lookups.reducers(), lookups.wheels(), lookups.multiplierM(), sieve);
+    }
+
+    static AuxPrimeLookups auxPrimeLookups(Models.NumberAndFactors d, Models.NumberAndFactors b, long m, int k) {
+        final var primesInB = b.primes();
+        // REMARK: These lookups are rewritten for every d, so they are kept per d rather than in static arrays,
+        // as several threads may be checking different d values at once.
+        final var ssubdCandidateLookupTable = new long[251][];
+        final var multiplierMModBCache = new long[251];
+        final var reducers = new FastMod[primesInB.length];
 
         var dMod3 = Math.floorMod(d.number(), 3);
         var multiplier = dMod3 == 2 ? -1 : 1;
         var multiplierM = multiplier * m;
 
-        for(var pb: primesInB) {
+        for (int i = 0; i < primesInB.length; i++) {
+            final var pb = primesInB[i];
             var dModP = Math.floorMod(d.number(), pb);
-            Step4.ssubdCandidateLookupTable[pb - 1] = Utils.isInSSubDCache(dModP, dMod3, pb, k);
-            Step4.multiplierMModBCache[pb-1] = Math.floorMod(multiplierM, pb);
+            ssubdCandidateLookupTable[pb - 1] = Utils.isInSSubDCache(dModP, dMod3, pb, k);
+            multiplierMModBCache[pb-1] = Math.floorMod(multiplierM, pb);
+            reducers[i] = FastMod.of(pb);
         }
-//        long toCheckEstimate = zMax / Math.abs(m);
+        return new AuxPrimeLookups(primesInB, ssubdCandidateLookupTable, multiplierMModBCache, reducers, AuxPrimeWheels.of(primesInB, ssubdCandidateLookupTable, multiplierM), multiplierM, null);
+    }
 
-        for (; Zm.hasNext(); ) {
-            //            count += 1;
-//            if (count % 1000 == 0 ) System.out.println("Checked " + count + " Z_m solutions!");
+    public static void step4_ZmCheck(Models.NumberAndFactors d, LongIterator Zm, Models.NumberAndFactors b, long m, int k, long zMax, SolutionSink sink) {
+        step4_ZmCheck(d, Zm, auxPrimeLookups(d, b, m, k), k, zMax, sink);
+    }
+
+    static void step4_ZmCheck(Models.NumberAndFactors d, LongIterator Zm, AuxPrimeLookups lookups, int k, long zMax, SolutionSink sink) {
+        final var context = SearchContext.get();
+        while (Zm.hasNext() && !sink.isDone()) {
             var z = Zm.nextLong();
-//            var zChecked = 0;
-//            var squaresChecked = 0;
-//            if (Instant.now().getEpochSecond() - start.getEpochSecond() > 60) {
-//                System.out.println("Checked " + count + " Z_m solutions in about 60s!");
-//                throw new RuntimeException("FOO!");
-//            }
-
-            while (Math.abs(z) < zMax) {
-//                zChecked += 1;
-//                if (zChecked % 10000 == 0) System.out.println("For a specific residue class, zChecked: " +zChecked + " out of ~" + toCheckEstimate);
-                var shouldCheckSquare = true;
-                for (var pb : primesInB) {
-                    var zModP = floorMod(z, pb);
-                    if (ssubdCandidateLookupTable[pb - 1][zModP] == 0) {
-                        shouldCheckSquare = false;
-                        break;
-                    }
+            scanProgression(d.number(), z, progressionLength(z, lookups.multiplierM(), zMax), lookups, k, sink, context);
+        }
+    }
+
+    // Number of z = z0 + j * multiplierM, j >= 0, with |z| < zMax, given a residue 0 <= z0 < |multiplierM|.
+    static long progressionLength(long z0, long multiplierM, long zMax) {
+        if (z0 >= zMax) return 0;
+        if (multiplierM > 0) return (zMax - z0 - 1) / multiplierM + 1;
+        // REMARK: zMax + z0 may not fit in a signed long, but always fits in an unsigned one.
+        return Long.divideUnsigned(zMax + z0 - 1, -multiplierM) + 1;
+    }
+
+    // Checks z, z + multiplierM, ..., for `steps` values of z, handing the solutions found to `sink`. `context` is the
+    // calling thread's.
+    static void scanProgression(long d, long z, long steps, AuxPrimeLookups lookups, int k, SolutionSink sink, SearchContext context) {
+        final var sieve = lookups.sieve();
+        if (null == sieve) {
+            walkProgression(d, z, steps, lookups, k, sink, context);
+            return;
+        }
+        sieve.forEachSurvivor(z, steps, lookups.multiplierM(), context, candidate -> {
+            if (GenericUtils.isSquareCandidate(d, candidate, k)) report(d, candidate, k, sink);
+        });
+    }
+
+    // Progressions shorter than this reduce each z on its own.
+    static final long shortProgressionSteps = 4;
+    // Below 4 lanes, e.g. 128-bit vectors, the gathers of the vector walk cost more than the scalar walk.
+    static final int minVectorLanes = 4;
+    // Filters the z of progressions of at least `lanes()` z, or null when there's no `VectorWalk` to load, or its
+    // vectors are too narrow.
+    @Nullable
+    static final SurvivorWalk vectorWalk = loadVectorWalk();
+
+    // The module is checked first so that the vector classes are never loaded without it. VectorWalk is missing from
+    // builds on JDK 14 and 15, see build.gradle.
+    @Nullable
+    private static SurvivorWalk loadVectorWalk() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            final var walk = (SurvivorWalk) Class.forName("org.cliu.VectorWalk").getDeclaredConstructor().newInstance();
+            return walk.lanes() >= minVectorLanes ? walk : null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Checks z, z + multiplierM, ..., for `steps` values of z, filtering them through the wheels of `lookups` rather
+    // than a sieve window: with `vectorWalk` for progressions long enough to fill its lanes, otherwise with
+    // `walkScalar`.
+    static void walkProgression(long d, long z, long steps, AuxPrimeLookups lookups, int k, SolutionSink sink, SearchContext context) {
+        if (steps < shortProgressionSteps) {
+            // Most progressions are this short once m is close to zMax, and setting up the residues wouldn't pay off.
+            for (long j = 0; j < steps; j++, z += lookups.multiplierM()) {
+                if (lookups.wheels().passes(z) && GenericUtils.isSquareCandidate(d, z, k)) report(d, z, k, sink);
+            }
+            return;
+        }
+        if (null != vectorWalk && steps >= vectorWalk.lanes()) {
+            vectorWalk.forEachSurvivor(z, steps, lookups, context, candidate -> {
+                if (GenericUtils.isSquareCandidate(d, candidate, k)) report(d, candidate, k, sink);
+            });
+            return;
+        }
+        walkScalar(d, z, steps, lookups, k, sink, context);
+    }
+
+    // The walk without vectors, one z at a time. Only the first z is reduced mod each wheel, after which the residues
+    // step by multiplierM mod Q with a conditional subtract, so there's no division in the loop.
+    static void walkScalar(long d, long z, long steps, AuxPrimeLookups lookups, int k, SolutionSink sink, SearchContext context) {
+        final var wheels = lookups.wheels();
+        final var n = wheels.size();
+        final var bits = wheels.bits();
+        final var moduli = wheels.moduli();
+        final var increments = wheels.increments();
+        final var multiplierM = lookups.multiplierM();
+        final var zModQ = context.wheelResidues(n);
+        for (int i = 0; i < n; i++) {
+            zModQ[i] = wheels.reducers()[i].floorMod(z);
+        }
+        for (long j = 0; j < steps; j++) {
+            // Checks and steps every residue without branching, as the z that pass are rare and unpredictable.
+            var shouldCheckSquare = 1L;
+            for (int i = 0; i < n; i++) {
+                final var r = zModQ[i];
+                shouldCheckSquare &= bits[i][r >>> 6] >>> r;
+                final var next = r + increments[i] - moduli[i];
+                zModQ[i] = next + ((next >> 31) & moduli[i]);
+            }
+            // Check square
+            if ((shouldCheckSquare & 1) != 0 && GenericUtils.isSquareCandidate(d, z, k)) {
+                report(d, z, k, sink);
+            }
+            z = z + multiplierM;
+        }
+    }
+
+    private static void report(long d, long z, int k, SolutionSink sink) {
+        final var solution = GenericUtils.recoverSolution(d, z, k);
+        if (null == solution) {
+            // 3d(4|k - z^3| - d^3) is a square, but x and y aren't integers.
+            System.out.println(String.format("FOUND SQUARE without integer solution!! d:%s,z:%s", d, z));
+            return;
+        }
+        sink.accept(solution);
+    }
+
+    // A task checks at most this many z before splitting further.
+    static final long leafSteps = 1 << 22;
+    // Tasks check whether the sink wants the search to stop after every this many z.
+    static final long cancelCheckSteps = 1 << 16;
+
+    static void checkParallel(Plan plan, SolutionSink sink, ForkJoinPool pool) {
+        final var job = new ZmCheckJob(plan.d().number(), plan.crt(), plan.lookups(), plan.k(), plan.zMax(), plan.zMax() / plan.m() + 1, sink);
+        pool.invoke(new ZmCheckTask(job, 0, plan.crt().size(), noResidue, 0, -1));
+    }
+
+    // State shared by all the tasks checking one d. All tasks report to the same sink, which must be thread-safe.
+    record ZmCheckJob(long d, CrtBasis crt, AuxPrimeLookups lookups, int k, long zMax, long stepsPerResidue, SolutionSink sink) {
+        boolean isDone() {
+            return sink.isDone();
+        }
+    }
+
+    // Checks the residues with index in [lo, hi) of Z_m. Large ranges are split in halves, and when a single residue
+    // has a long progression, the progression is split into chunks [jFrom, jTo) of z = residue + j * multiplierM.
+    static class ZmCheckTask extends RecursiveAction {
+        private final ZmCheckJob job;
+        private final long lo;
+        private final long hi;
+        // Only known once the range is down to a single residue, `noResidue` before that.
+        private final long residue;
+        private final long jFrom;
+        // -1 for the whole progression.
+        private final long jTo;
+
+        ZmCheckTask(ZmCheckJob job, long lo, long hi, long residue, long jFrom, long jTo) {
+            this.job = job;
+            this.lo = lo;
+            this.hi = hi;
+            this.residue = residue;
+            this.jFrom = jFrom;
+            this.jTo = jTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (job.isDone() || lo >= hi) return;
+            final var multiplierM = job.lookups().multiplierM();
+            if (hi - lo > 1) {
+                if ((hi - lo) * job.stepsPerResidue() > leafSteps) {
+                    final var mid = lo + (hi - lo) / 2;
+                    invokeAll(new ZmCheckTask(job, lo, mid, noResidue, 0, -1), new ZmCheckTask(job, mid, hi, noResidue, 0, -1));
+                    return;
                 }
-                // Check square
-                if (shouldCheckSquare) {
-//                    squaresChecked += 1;
-                    if (GenericUtils.isSquareCandidate(d.number(), z, k)) {
-                        throw new SquareFoundException(String.format("FOUND SQUARE!! d:%s,z:%s", d, z));
-                    }
+                final var Zm = job.crt().iterator(lo, hi);
+                while (Zm.hasNext() && !job.isDone()) {
+                    final var z = Zm.nextLong();
+                    scanChunk(z, 0, progressionLength(z, multiplierM, job.zMax()));
                 }
-                z = z + multiplierM;
+                return;
+            }
+
+            final var z = residue != noResidue ? residue : job.crt().iterator(lo, hi).nextLong();
+            final var to = jTo >= 0 ? jTo : progressionLength(z, multiplierM, job.zMax());
+            if (to - jFrom > leafSteps) {
+                final var mid = jFrom + (to - jFrom) / 2;
+                invokeAll(new ZmCheckTask(job, lo, hi, z, jFrom, mid), new ZmCheckTask(job, lo, hi, z, mid, to));
+                return;
             }
-//            System.out.println(String.format("Checked %s zs, %s squares, %s percent", zChecked, squaresChecked, 100.0 * squaresChecked/zChecked));
+            scanChunk(z, jFrom, to);
         }
-    }
 
-    static int floorMod(long x, int y) {
-        // TODO: Faster floorMod method may be possible using Barret Reduction here.
-        //  Profile and optimize.
-        return Math.floorMod(x,y);
+        private void scanChunk(long residue, long from, long to) {
+            final var multiplierM = job.lookups().multiplierM();
+            final var context = SearchContext.get();
+            for (long j = from; j < to && !job.isDone(); j += cancelCheckSteps) {
+                final var steps = Math.min(cancelCheckSteps, to - j);
+                scanProgression(job.d(), residue + j * multiplierM, steps, job.lookups(), job.k(), job.sink(), context);
+            }
+        }
     }
 }
@@ -0,0 +1,15 @@
+package org.cliu;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Filters the z of a progression through the wheels of `AuxPrimeWheels` `lanes` at a time. Its one implementation,
+ * `VectorWalk`, needs jdk.incubator.vector, so it's in the `vector` source set, which is only compiled on JDK 16+, and
+ * `Step4` loads it by name.
+ */
+interface SurvivorWalk {
+    int lanes();
+
+    // Hands every z = z0 + j * multiplierM, 0 <= j < steps, that passes all the aux primes to `survivor`, in order.
+    void forEachSurvivor(long z0, long steps, Step4.AuxPrimeLookups lookups, SearchContext context, LongConsumer survivor);
+}
@@ -0,0 +1,124 @@
+package org.cliu;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The c0, c1 and c2 picked by `Autotuner` for each bucket of d, where bucket b holds the d in [2^b, 2^(b+1)). Saved as
+ * a properties file in the working directory, which `Main` loads for every mode, so that they search with the tuned
+ * constants once a profile exists for their k and zMax.
+ */
+public class TuningProfile {
+    private static final ConcurrentHashMap<SavedKey, Optional<TuningProfile>> saved = new ConcurrentHashMap<>();
+
+    private record SavedKey(int k, long zMax) {}
+
+    private final int k;
+    private final long zMax;
+    private final TreeMap<Integer, Models.PlanConstants> byBucket;
+
+    TuningProfile(int k, long zMax, TreeMap<Integer, Models.PlanConstants> byBucket) {
+        this.k = k;
+        this.zMax = zMax;
+        this.byBucket = byBucket;
+    }
+
+    static int bucket(long d) {
+        return 63 - Long.numberOfLeadingZeros(d);
+    }
+
+    static Path defaultPath(int k) {
+        return Path.of(String.format("tuning-k%s.properties", k));
+    }
+
+    // The profile saved for k in the working directory, if there's one that was tuned for zMax.
+    @Nullable
+    static TuningProfile saved(int k, long zMax) {
+        return saved.computeIfAbsent(new SavedKey(k, zMax), key -> {
+            final var path = defaultPath(k);
+            if (!Files.exists(path)) return Optional.empty();
+            final var profile = load(path);
+            if (profile.zMax != zMax) {
+                System.out.println(String.format("Ignoring %s, which was tuned for zMax=%s rather than %s", path, profile.zMax, zMax));
+                return Optional.empty();
+            }
+            System.out.println(String.format("Using tuning profile %s: %s", path, profile));
+            return Optional.of(profile);
+        }).orElse(null);
+    }
+
+    // The constants of the closest tuned bucket, as the best constants change slowly with d.
+    Models.PlanConstants constantsFor(long d, Models.PlanConstants fallback) {
+        final var bucket = bucket(d);
+        final var below = byBucket.floorEntry(bucket);
+        final var above = byBucket.ceilingEntry(bucket);
+        if (null == below) return null == above ? fallback : above.getValue();
+        if (null == above || bucket - below.getKey() <= above.getKey() - bucket) return below.getValue();
+        return above.getValue();
+    }
+
+    // Identifies the tuned constants, so that journals don't mix up searches with different profiles: the SHA-256 of
+    // the saved properties, in key order, which doesn't collide for different profiles the way a hash code would.
+    String id() {
+        final MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        properties().forEach((key, value) -> sha256.update(String.format("%s=%s\n", key, value).getBytes(StandardCharsets.UTF_8)));
+        return String.format("%064x", new BigInteger(1, sha256.digest()));
+    }
+
+    // What's saved, by key.
+    private TreeMap<String, String> properties() {
+        final var properties = new TreeMap<String, String>();
+        properties.put("k", Integer.toString(k));
+        properties.put("zMax", Long.toString(zMax));
+        byBucket.forEach((bucket, c) -> properties.put("bucket." + bucket, String.format("%s,%s,%s", c.c0(), c.c1(), c.c2())));
+        return properties;
+    }
+
+    void save(Path path) {
+        final var properties = new Properties();
+        properties.putAll(properties());
+        try (var writer = Files.newBufferedWriter(path)) {
+            properties.store(writer, "c0,c1,c2 by bucket b of d in [2^b, 2^(b+1))");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static TuningProfile load(Path path) {
+        final var properties = new Properties();
+        try (var reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final var byBucket = new TreeMap<Integer, Models.PlanConstants>();
+        for (var key : properties.stringPropertyNames()) {
+            if (!key.startsWith("bucket.")) continue;
+            final var c = properties.getProperty(key).split(",");
+            byBucket.put(Integer.parseInt(key.substring("bucket.".length())), new Models.PlanConstants(Long.parseLong(c[0]), Long.parseLong(c[1]), Long.parseLong(c[2])));
+        }
+        return new TuningProfile(Integer.parseInt(properties.getProperty("k")), Long.parseLong(properties.getProperty("zMax")), byBucket);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("k=%s zMax=%s %s", k, zMax, byBucket);
+    }
+}
@@ -13,7 +13,6 @@ import org.apache.commons.math3.util.Pair;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -63,27 +62,18 @@ public class Utils {
         // END CONSTRUCTIVE SOLUTION HERE
     }
 
-    static Cache<String, List<Long>> henselCuberootCache = Caffeine.newBuilder()
-            .maximumSize((long)1e8)
-            .build();
-
-    static long[][] cuberootOfPrimeCache = new long[(int)1e8][];
-    static Int2IntOpenHashMap cuberootIdxLookup = new Int2IntOpenHashMap();
-
     /**
      * Computes the cuberoot of k mod p^e.
      * Does so in a cached fashion to avoid re-computing these values over and over.
      */
     public static List<Long> henselCuberoot(long prime, long primeExp, long cuberoot_k) {
-//        var cacheKey = prime + "~" + primeExp + "~" + cuberoot_k;
-//        return henselCuberootCache.get(cacheKey, key -> hensel(List.of(-cuberoot_k, 0L, 0L, 1L), prime, primeExp, cuberoot_k));
         return Arrays.stream(hensel(new long[] {-cuberoot_k, 0L, 0L, 1L}, prime, primeExp, cuberoot_k)).boxed().collect(Collectors.toList());
     }
 
     // @VisibleForTesting
     static long[] hensel(long[] f, long prime, long primeExp, long cuberoot_k) {
         // TODO: Use raw arrays for memory efficiency here.
-        if (primeExp == 1) return cuberootOfPrime(cuberoot_k, prime);
+        if (primeExp == 1) return CubeRoots.of(cuberoot_k, prime);
         long pk1 = (long) Math.pow(prime, primeExp - 1);
         var df = computeDf(f);
         var pk = BigInteger.valueOf(pk1).multiply(BigInteger.valueOf(prime));
@@ -98,6 +88,9 @@ public class Utils {
                     var modInvValue = dfn.modInverse(pB);
                     acc.add(BigInteger.valueOf(n).add(fn.multiply(modInvValue.negate()).divide(BigInteger.valueOf(pk1)).mod(BigInteger.valueOf(prime)).multiply(BigInteger.valueOf(pk1))).longValue());
                 }
+            } else if (!dfn.equals(BigInteger.ZERO)) {
+                // A simple root lifts to a single root mod p^e, which is n itself as f(n) = 0 mod p^e.
+                acc.add(n);
             } else {
                 for (int i = 0; i < prime; i++) {
                     acc.add(n + i * pk1);
@@ -120,29 +113,18 @@ public class Utils {
 
     // @VisibleForTesting
     static long[] computeDf(long[] coefs) {
+        // The x^i term gives i x^(i - 1).
         final long[] result = new long[coefs.length];
         for (int i = 1; i < coefs.length; i++) {
-            result[i] = (i * coefs[i]);
+            result[i - 1] = (i * coefs[i]);
         }
         return result;
     }
 
 
-    private static long[] cuberootOfPrime(long k, long p) {
-        if (cuberootIdxLookup.containsKey((int)p)) {
-            return cuberootOfPrimeCache[cuberootIdxLookup.get((int)p)];
-        } else {
-            final var nextIdx = cuberootIdxLookup.size();
-            final var result = cuberootOfPrimeComputation(k, p);
-            cuberootOfPrimeCache[nextIdx] = result;
-            cuberootIdxLookup.put((int)p, nextIdx);
-            return result;
-        }
-    }
-
     // This algorithm is from Algorithm 4.2 of https://doi.org/10.1016/S0893-9659(02)00031-9
     // Original reference impl from the MathLab library.
-    private static long[] cuberootOfPrimeComputation(long k, long p) {
+    static long[] cuberootOfPrimeComputation(long k, long p) {
         k = Math.floorMod(k, p);
         if (k == 0 || p == 2 || p == 3) return new long[] { Math.floorMod(k, p) };
         if (Math.floorMod(p, 3) == 2) {
@@ -215,164 +197,51 @@ public class Utils {
     }
 
 
-    // TODO: These are static arrays that need to be constructed on load-time, instead of being produced lazily.
-    static long[][][][] SsubdCacheFor3Values = Constants.getSsubDCache(3, false);
-    static long[][][][] SsubdCacheFor33Values = Constants.getSsubDCache(33, false);
-    static long[][][][] SsubdCacheFor42Values = Constants.getSsubDCache(42, false);
-    static long[][][][] SsubdCacheFor165Values = Constants.getSsubDCache(165, false);
-
-    static long[][][][] SsubdCacheFor3Bitmask = Constants.getSsubDCache(3, true);
-    static long[][][][] SsubdCacheFor33Bitmask = Constants.getSsubDCache(33, true);
-    static long[][][][] SsubdCacheFor42Bitmask = Constants.getSsubDCache(42, true);
-    static long[][][][] SsubdCacheFor165Bitmask = Constants.getSsubDCache(165, true);
-
-    // Produces an array that caches SsubDP lookups, where the candidate mod P just needs to be indexed into the array.
+    // S_d(p) as a bitset of the z mod p in it, for p in A. See `SsubdTables`.
     static long[] isInSSubDCache(long dModP, long dMod3, long prime, int k) {
-        final var primeIndex = Constants.primeToIndexLookup(prime);
-        long[][][][] cacheToUse;
-        switch (k) {
-            case 3:
-                cacheToUse = SsubdCacheFor3Bitmask;
-                break;
-            case 33:
-                cacheToUse = SsubdCacheFor33Bitmask;
-                break;
-            case 42:
-                cacheToUse = SsubdCacheFor42Bitmask;
-                break;
-            case 165:
-                cacheToUse = SsubdCacheFor165Bitmask;
-                break;
-            default:
-                throw new RuntimeException("Unknown k: " + k);
-        }
-
-        return cacheToUse[primeIndex][(int) dModP][(int) (dMod3)];
+        return SsubdTables.of(k).row(dModP, dMod3, prime);
     }
 
     static boolean isInSSubD (long d, long prime, int k, long candidate) {
-        final var dModP = Math.floorMod(d, prime);
-        final long dMod3 = Math.floorMod(d, 3);
-        final var primeIndex = Constants.primeToIndexLookup(prime);
-        long[][][][] cacheToUse;
-        switch (k) {
-            case 3:
-                cacheToUse = SsubdCacheFor3Bitmask;
-                break;
-            case 33:
-                cacheToUse = SsubdCacheFor33Bitmask;
-                break;
-            case 42:
-                cacheToUse = SsubdCacheFor42Bitmask;
-                break;
-            case 165:
-                cacheToUse = SsubdCacheFor165Bitmask;
-                break;
-            default:
-                throw new RuntimeException("Unknown k: " + k);
-        }
-
-        return cacheToUse[primeIndex][(int)dModP][(int)(dMod3)][(int)candidate] == 1;
+        return SsubdTables.contains(isInSSubDCache(Math.floorMod(d, prime), Math.floorMod(d, 3), prime, k), candidate);
     }
 
     static List<Long> SsubdP(long d, long prime, int k) {
-        final var dModP = Math.floorMod(d, prime);
-        final long dMod3 = Math.floorMod(d ,3);
-        final var primeIndex = Constants.primeToIndexLookup(prime);
-        long[][][][] cacheToUse;
-        switch (k) {
-            case 3:
-                cacheToUse = SsubdCacheFor3Values;
-                break;
-            case 33:
-                cacheToUse = SsubdCacheFor33Values;
-                break;
-            case 42:
-                cacheToUse = SsubdCacheFor42Values;
-                break;
-            case 165:
-                cacheToUse = SsubdCacheFor165Values;
-                break;
-            default:
-                throw new RuntimeException("Unknown k: " + k);
-        }
-
-        var bitmapResponse =  Arrays.stream(cacheToUse[primeIndex][(int)dModP][(int)dMod3]).boxed().collect(Collectors.toList());
-        return bitmapResponse;
-    }
-
-    static List<Long> SsubdPComputation(long dMpdP, long dModThree, long prime, int k) {
-        final var dBigInt = BigInteger.valueOf(dMpdP);
-        if (prime == 2) {
-            return List.of((long) Math.floorMod(k + dMpdP, 2));
-        }
-        else {
-            // REMARK: dMod3 = d^{(p-1)/2} mod p for p=3, so it is the legendre symbol
-            final var s = Constants.getEps(k) * (dModThree == 2 ? -1 : 1);
-            final var zs = new ArrayList<Long>();
-            final var squaresModP = new HashSet<Long>();
-            for (long i = 0; i < prime; i++) {
-                squaresModP.add(Math.floorMod(i * i, prime));
-            }
-
-            for (long i=0;i<prime;i++) {
-                final var dCubed = dBigInt.pow(3);
-                final var iCubed = BigInteger.valueOf(i).pow(3);
-                final var threed = dBigInt.multiply(BigInteger.valueOf(3));
-                final var fours = BigInteger.valueOf(4 * s);
-                final var zCubedMinusK = iCubed.subtract(BigInteger.valueOf(k));
-                final var potentialSquare = threed.multiply(
-                        (fours.multiply(zCubedMinusK)).subtract(dCubed)
-                );
-                if (squaresModP.contains(potentialSquare.mod(BigInteger.valueOf(prime)).longValueExact())) {
-                    zs.add(i);
-                }
-            }
-            return zs;
-        }
+        return SsubdTables.values(isInSSubDCache(Math.floorMod(d, prime), Math.floorMod(d, 3), prime, k));
     }
 
     // This is an attempt to implement 3.1-3.3 of the `On a question of Mordell` paper.
-    // We currently only have the mod 162 constraints for the `k=3` case.
+    // Only `k=3` has the mod 162 constraint from cubic reciprocity, other k use the 2- and 3-adic tables.
     static List<Long> cubicReciprocityConstraint(Models.NumberAndFactors d, long k) {
         if (k == 3) {
             final var first = BigInteger.valueOf(4 * GenericUtils.legendreSymbol(d.number(), 3) * d.number());
             final var dBigInt = BigInteger.valueOf(d.number());
             final var second = (dBigInt.multiply(dBigInt).subtract(ONE)).multiply(BigInteger.valueOf(3));
             // REMARK: Mod 81 rather than 162 to avoid the case of p^k being a power of 2.
-            final var toMod = d.primeFactors().containsKey(2) ? 81 : 162;
+            final var toMod = d.hasFactor(2) ? 81 : 162;
             return List.of((first.add(second)).mod(BigInteger.valueOf(toMod)).longValue());
         } else {
-            throw new RuntimeException("Not supported yet!");
+            return AdmissibleResidues.of((int) k).residues(d.number());
         }
     }
 
     // Produces an enumeration of the candidate `Zm` values using CRT and the possible residues.
     // This enumeration is lazy due to the cartesian product possibly expanding out to many rows.
     static LongIterator crtEnumeration(Pair<Models.NumberAndPower, List<Long>>[] numberToResidues) {
+        return crtEnumeration(numberToResidues, 0, crtEnumerationSize(numberToResidues));
+    }
 
-        var remainderPossibilities = new long[numberToResidues.length][];
-        final var coprimeNumbers = new long[numberToResidues.length];
-
-        var possibilities = 1;
-        for (int i=0;i<numberToResidues.length;i++) {
-            remainderPossibilities[i] =numberToResidues[i].getSecond().stream().mapToLong(l->l).toArray();
-            coprimeNumbers[i] = numberToResidues[i].getFirst().numberToPower();
-            possibilities = possibilities * numberToResidues[i].getSecond().size();
+    static long crtEnumerationSize(Pair<Models.NumberAndPower, List<Long>>[] numberToResidues) {
+        var size = 1L;
+        for (var numberToResidue : numberToResidues) {
+            size *= numberToResidue.getSecond().size();
         }
-        final var cartesianProductRemainders = new CartesianProductOfLongsIterator.Product(remainderPossibilities).iterator();
-
-        return new LongIterator() {
-            @Override
-            public long nextLong() {
-                return Utils.crt(cartesianProductRemainders.nextLongs(), coprimeNumbers);
-            }
+        return size;
+    }
 
-            @Override
-            public boolean hasNext() {
-                return cartesianProductRemainders.hasNext();
-            }
-        };
+    // Same as above, but only for the candidates with index in [from, to) of the enumeration.
+    static LongIterator crtEnumeration(Pair<Models.NumberAndPower, List<Long>>[] numberToResidues, long from, long to) {
+        return CrtBasis.of(numberToResidues).iterator(from, to);
     }
 
     // Inductive solution as per description in https://en.wikipedia.org/wiki/Chinese_remainder_theoremhttps://en.wikipedia.org/wiki/Chinese_remainder_theorem
@@ -0,0 +1,247 @@
+package org.cliu;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * File-based work queue, so that several worker JVMs, on one host or on several hosts sharing a filesystem, can split
+ * a search between them without being configured by hand.
+ *
+ * A coordinator writes work units, each a range of largest-prime indices of `Runner.run`, into the queue directory:
+ *   `<id>.unit`    - the unit itself.
+ *   `<id>.lease`   - the worker currently holding the unit, and when its lease expires.
+ *   `<id>.done`    - the result reported by the worker that finished the unit.
+ *   `<id>.journal` - the `ProgressJournal` of the unit, so a reclaimed unit resumes where the previous worker stopped.
+ *
+ * Workers claim units whose lease is missing or expired, and renew their lease while working on it. A worker that
+ * dies stops renewing, so its unit is claimed again once the lease expires. A worker that was only too slow to renew,
+ * e.g. stalled by a long GC pause, finds out at its next renewal and stops working on the unit, and only the worker
+ * holding the lease can complete it. Claims, renewals and completions all happen while holding an exclusive lock on
+ * `queue.lock`, which makes them atomic across processes.
+ *
+ * Capacity is added by simply starting more workers against the same directory.
+ */
+public class WorkQueue {
+    static final long defaultLeaseMillis = TimeUnit.MINUTES.toMillis(5);
+
+    public record Unit(String id, int k, int primeIdxFrom, int primeIdxTo) {}
+
+    // Searches a claimed unit, recording its work in the journal, and stops early once the progress is cancelled.
+    interface UnitRunner {
+        ParallelRunner.Progress run(Unit unit, Models.SearchParameters params, ParallelRunner.Progress progress);
+    }
+
+    private final Path dir;
+    private final long leaseMillis;
+    private final LongSupplier clock;
+
+    public WorkQueue(Path dir, long leaseMillis, LongSupplier clock) {
+        this.dir = dir;
+        this.leaseMillis = leaseMillis;
+        this.clock = clock;
+    }
+
+    public WorkQueue(Path dir) {
+        this(dir, defaultLeaseMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Coordinator side: splits the largest-prime indices [0, numPrimes) into `unitCount` units. Units are numbered so
+     * that the ones for the largest primes, like `Runner.run`, are claimed first.
+     */
+    public static WorkQueue create(Path dir, int k, int numPrimes, int unitCount) {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final var queue = new WorkQueue(dir);
+        queue.locked(() -> {
+            for (int i = 0; i < unitCount; i++) {
+                final var to = (int) ((long) numPrimes * (unitCount - i) / unitCount);
+                final var from = (int) ((long) numPrimes * (unitCount - i - 1) / unitCount);
+                final var unit = new Properties();
+                unit.setProperty("k", Integer.toString(k));
+                unit.setProperty("primeIdxFrom", Integer.toString(from));
+                unit.setProperty("primeIdxTo", Integer.toString(to));
+                queue.write(queue.path(String.format("%06d", i), "unit"), unit);
+            }
+            return null;
+        });
+        return queue;
+    }
+
+    // Claims the first unit that is neither done nor leased by a live worker.
+    public Optional<Unit> claim(String workerId) {
+        return locked(() -> {
+            for (var id : unitIds()) {
+                if (Files.exists(path(id, "done"))) continue;
+                final var lease = read(path(id, "lease"));
+                if (null != lease && Long.parseLong(lease.getProperty("expiresAt")) > clock.getAsLong()) continue;
+                if (null != lease) {
+                    System.out.println(String.format("Reclaiming unit %s from expired worker %s", id, lease.getProperty("worker")));
+                }
+                writeLease(id, workerId);
+                final var unit = read(path(id, "unit"));
+                return Optional.of(new Unit(id, Integer.parseInt(unit.getProperty("k")), Integer.parseInt(unit.getProperty("primeIdxFrom")), Integer.parseInt(unit.getProperty("primeIdxTo"))));
+            }
+            return Optional.empty();
+        });
+    }
+
+    // Extends the lease of a unit. Returns false if the lease was lost to another worker, after it expired.
+    public boolean renew(Unit unit, String workerId) {
+        return locked(() -> {
+            final var lease = read(path(unit.id(), "lease"));
+            if (null == lease || !workerId.equals(lease.getProperty("worker"))) return false;
+            writeLease(unit.id(), workerId);
+            return true;
+        });
+    }
+
+    // Marks a unit done. Returns false, leaving the unit as it is, if the lease was lost to another worker.
+    public boolean complete(Unit unit, String workerId, long d0sChecked, Iterable<String> solutions) {
+        return locked(() -> {
+            final var lease = read(path(unit.id(), "lease"));
+            if (null == lease || !workerId.equals(lease.getProperty("worker"))) return false;
+            final var result = new Properties();
+            result.setProperty("worker", workerId);
+            result.setProperty("d0sChecked", Long.toString(d0sChecked));
+            var i = 0;
+            for (var solution : solutions) {
+                result.setProperty("solution." + i++, solution);
+            }
+            write(path(unit.id(), "done"), result);
+            try {
+                Files.deleteIfExists(path(unit.id(), "lease"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        });
+    }
+
+    public Path journalPath(Unit unit) {
+        return path(unit.id(), "journal");
+    }
+
+    /**
+     * Worker side: claims units until none are left, running each with `ParallelRunner` and renewing the lease in the
+     * background while it runs.
+     */
+    public void work(int parallelism, IntFunction<Models.SearchParameters> paramsFor) {
+        work(ManagementFactory.getRuntimeMXBean().getName(), paramsFor, (unit, params, progress) -> ParallelRunner.run(parallelism, progress, params, unit.primeIdxFrom(), unit.primeIdxTo()));
+    }
+
+    // Runs each unit with `runner` and the parameters for its k, and cancels it as soon as a renewal finds that the
+    // lease was lost.
+    void work(String workerId, IntFunction<Models.SearchParameters> paramsFor, UnitRunner runner) {
+        final var heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            final var thread = new Thread(r, "lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (var unit = claim(workerId); unit.isPresent(); unit = claim(workerId)) {
+            final var claimed = unit.get();
+            System.out.println(String.format("Worker %s claimed unit %s", workerId, claimed));
+            final var params = paramsFor.apply(claimed.k());
+            try (var journal = ProgressJournal.open(journalPath(claimed), params, true)) {
+                final var progress = new ParallelRunner.Progress(journal);
+                final var renewal = heartbeat.scheduleAtFixedRate(() -> {
+                    if (!progress.cancelled.get() && !renew(claimed, workerId)) {
+                        System.out.println(String.format("Worker %s lost the lease of unit %s, stopping", workerId, claimed.id()));
+                        progress.cancelled.set(true);
+                    }
+                }, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+                try {
+                    runner.run(claimed, params, progress);
+                } finally {
+                    renewal.cancel(false);
+                }
+                if (progress.cancelled.get()) continue;
+                if (!complete(claimed, workerId, progress.checked.sum(), progress.found.stream().map(Models.Solution::toString).collect(Collectors.toList()))) {
+                    System.out.println(String.format("Worker %s lost the lease of unit %s before completing it", workerId, claimed.id()));
+                }
+            }
+        }
+        heartbeat.shutdown();
+        System.out.println(String.format("Worker %s found no more units to claim", workerId));
+    }
+
+    private void writeLease(String id, String workerId) {
+        final var lease = new Properties();
+        lease.setProperty("worker", workerId);
+        lease.setProperty("expiresAt", Long.toString(clock.getAsLong() + leaseMillis));
+        write(path(id, "lease"), lease);
+    }
+
+    private Iterable<String> unitIds() {
+        try (var files = Files.list(dir)) {
+            return files.map(f -> f.getFileName().toString())
+                    .filter(f -> f.endsWith(".unit"))
+                    .map(f -> f.substring(0, f.length() - ".unit".length()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path path(String id, String extension) {
+        return dir.resolve(id + "." + extension);
+    }
+
+    private static Properties read(Path path) {
+        if (!Files.exists(path)) return null;
+        try (Reader reader = Files.newBufferedReader(path)) {
+            final var properties = new Properties();
+            properties.load(reader);
+            return properties;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes to a temporary file first and renames it, so readers never see a partially written file.
+    private static void write(Path path, Properties properties) {
+        final var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp)) {
+                properties.store(writer, null);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // File locks are held on behalf of the whole JVM, so threads of one JVM also need to exclude each other.
+    private static final Object jvmLock = new Object();
+
+    private <T> T locked(Supplier<T> action) {
+        synchronized (jvmLock) {
+            try (var channel = FileChannel.open(dir.resolve("queue.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 var ignored = channel.lock()) {
+                return action.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissibleResiduesTest {
+    @Test
+    public void testKnownSolutionsAreAdmissible() {
+        assertAdmissible(42, 102980666258459L, 12602123297335631L);
+        assertAdmissible(165, 2150547688632439L, 98422560467622814L);
+        assertAdmissible(3, 108398887211L, -472715493453327032L);
+    }
+
+    // Every small solution of x^3 + y^3 + z^3 = k, for every way of picking z out of the three.
+    @Test
+    public void testSmallSolutionsAreAdmissible() {
+        final int bound = 300;
+        var checked = 0;
+        for (long x = -bound; x <= bound; x++) {
+            for (long y = x; y <= bound; y++) {
+                final var sum = x * x * x + y * y * y;
+                final var zApprox = Math.round(Math.cbrt((double) -sum));
+                for (long z = zApprox - 1; z <= zApprox + 1; z++) {
+                    final var k = sum + z * z * z;
+                    if (k <= 0 || k > 1000 || x + y == 0) continue;
+                    assertAdmissible((int) k, Math.abs(x + y), z);
+                    checked++;
+                }
+            }
+        }
+        Assert.assertTrue(checked > 100);
+    }
+
+    @Test
+    public void testResiduesCutZ() {
+        for (var k : new int[]{33, 42, 165}) {
+            for (var d : new long[]{1, 2, 5, 7, 10, 1234567}) {
+                final var q = AdmissibleResidues.modulus(d);
+                Assert.assertEquals(d % 2 == 1 ? 486 : 243, q);
+                Assert.assertEquals(12, AdmissibleResidues.of(k).residues(d).size());
+            }
+        }
+    }
+
+    // Mod 3^5 isn't just the lift of mod 3^4: it keeps 12 of 243 residues, where the lifts of the 6 of 81 would be 18.
+    @Test
+    public void testThreeToTheFifthFiltersMoreThanThreeToTheFourth() {
+        for (var k : new int[]{33, 42, 165}) {
+            for (long d = 1; d < 243; d++) {
+                if (d % 3 == 0) continue;
+                // The table of even d is mod 243.
+                final var residues = AdmissibleResidues.of(k).residues(d % 2 == 0 ? d : d + 243);
+                final var mod81 = admissibleByBruteForce(k, d, 81);
+                final var mod243 = admissibleByBruteForce(k, d, 243);
+                Assert.assertEquals(6, count(mod81));
+                Assert.assertEquals(12, count(mod243));
+                for (int z = 0; z < 243; z++) {
+                    // Every residue mod 243 still reduces to one mod 81.
+                    if (mod243[z]) Assert.assertTrue(String.format("k=%s d=%s z=%s", k, d, z), mod81[z % 81]);
+                    Assert.assertEquals(mod243[z], residues.contains((long) z));
+                }
+            }
+        }
+    }
+
+    // Whether x^3 + y^3 + z^3 = k mod q has a solution with x + y = +-d, for each z mod q.
+    private static boolean[] admissibleByBruteForce(int k, long d, int q) {
+        final var admissible = new boolean[q];
+        for (var s : new long[]{d, -d}) {
+            for (long x = 0; x < q; x++) {
+                final var y = s - x;
+                for (long z = 0; z < q; z++) {
+                    if (Math.floorMod(x * x * x + y * y * y + z * z * z - k, q) == 0) admissible[(int) z] = true;
+                }
+            }
+        }
+        return admissible;
+    }
+
+    private static int count(boolean[] admissible) {
+        var count = 0;
+        for (var a : admissible) if (a) count++;
+        return count;
+    }
+
+    private static void assertAdmissible(int k, long d, long z) {
+        final var q = AdmissibleResidues.modulus(d);
+        final var residues = AdmissibleResidues.of(k).residues(d);
+        if (!residues.contains(Math.floorMod(z, q))) Assert.fail(String.format("k=%s d=%s z=%s", k, d, z));
+    }
+}
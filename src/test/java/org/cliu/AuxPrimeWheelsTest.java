@@ -0,0 +1,41 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+
+public class AuxPrimeWheelsTest {
+    // A z should pass the wheels exactly when it passes S_d(p) for each aux prime on its own.
+    @Test
+    public void testWheelsMatchThePrimes() {
+        final var d0 = new Models.NumberAndFactors(5, 5, 1);
+        final var plan = Runner.plan(d0, 33, (long) 1e11, Constants.c0, Constants.c1, Constants.c2 * 3);
+        final var lookups = plan.lookups();
+        final var wheels = lookups.wheels();
+
+        var product = 1L;
+        for (var q : wheels.moduli()) {
+            Assert.assertTrue(q <= AuxPrimeWheels.maxModulus);
+            product *= q;
+        }
+        var primesProduct = 1L;
+        for (var p : lookups.primesInB()) primesProduct *= p;
+        Assert.assertEquals(primesProduct, product);
+        Assert.assertTrue(wheels.size() < lookups.primesInB().length);
+
+        final var random = new Random(42);
+        var passed = 0;
+        for (int i = 0; i < 1000000; i++) {
+            final var z = random.nextLong() >> 10;
+            var expected = true;
+            for (var p : lookups.primesInB()) {
+                expected &= SsubdTables.contains(lookups.ssubdCandidateLookupTable()[p - 1], Math.floorMod(z, (long) p));
+            }
+            Assert.assertEquals("z=" + z, expected, wheels.passes(z));
+            if (expected) passed++;
+        }
+        Assert.assertTrue(passed > 0);
+    }
+}
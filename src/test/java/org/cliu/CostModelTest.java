@@ -0,0 +1,21 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class CostModelTest {
+    // The estimate should match the number of z that step 4 actually walks through.
+    @Test
+    public void testExpectedWorkMatchesProgressionLengths() {
+        final var d0 = new Models.NumberAndFactors(5, 5, 1);
+        final var plan = Runner.plan(d0, 33, (long) 1e11, Constants.c0, Constants.c1, Constants.c2 * 3);
+
+        var walked = 0L;
+        for (var Zm = Utils.crtEnumeration(plan.numberToResidues()); Zm.hasNext(); ) {
+            walked += Step4.progressionLength(Zm.nextLong(), plan.lookups().multiplierM(), plan.zMax());
+        }
+        final var expected = CostModel.expectedWork(plan);
+        Assert.assertEquals(String.format("expected: %s, walked: %s", expected, walked), 1.0, walked / expected, 0.01);
+    }
+}
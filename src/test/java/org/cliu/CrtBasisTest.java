@@ -0,0 +1,65 @@
+package org.cliu;
+
+import org.apache.commons.math3.util.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CrtBasisTest {
+    // Same elements in the same order as a CRT of every tuple of the Cartesian product, last axis fastest.
+    @Test
+    public void testMatchesCrtOfEveryTuple() {
+        assertMatches(axis(7, 1, 0L, 3L, 5L), axis(162, 1, 17L), axis(5, 2, 1L, 24L), axis(11, 1, 2L, 3L, 4L, 9L));
+        // Moduli whose product is above 2^62, with a prime power above 2^31.
+        assertMatches(axis(2, 40, 5L, 1L << 39, 12345678901L), axis(3, 10, 0L, 7L), axis(5, 1, 1L, 2L, 3L), axis(23, 1, 3L, 6L));
+        // Empty and single residue axes.
+        assertMatches(axis(5, 1, 1L), axis(7, 1));
+        assertMatches(axis(1, 1, 0L), axis(13, 1, 4L, 6L));
+    }
+
+    @SafeVarargs
+    private static void assertMatches(Pair<Models.NumberAndPower, List<Long>>... numberToResidues) {
+        final var expected = new ArrayList<Long>();
+        final var moduli = new long[numberToResidues.length];
+        for (int i = 0; i < moduli.length; i++) {
+            moduli[i] = numberToResidues[i].getFirst().numberToPower();
+        }
+        tuples(numberToResidues, 0, new long[numberToResidues.length], moduli, expected);
+
+        final var basis = CrtBasis.of(numberToResidues);
+        Assert.assertEquals(expected.size(), basis.size());
+        for (long from = 0; from <= expected.size(); from++) {
+            for (long to = from; to <= expected.size(); to++) {
+                final var actual = new ArrayList<Long>();
+                basis.iterator(from, to).forEachRemaining((long z) -> actual.add(z));
+                Assert.assertEquals(expected.subList((int) from, (int) to), actual);
+            }
+        }
+    }
+
+    private static void tuples(Pair<Models.NumberAndPower, List<Long>>[] numberToResidues, int axis, long[] remainders, long[] moduli, List<Long> out) {
+        if (axis == numberToResidues.length) {
+            var modulus = BigInteger.ONE;
+            for (var n : moduli) modulus = modulus.multiply(BigInteger.valueOf(n));
+            var z = BigInteger.ZERO;
+            for (int i = 0; i < moduli.length; i++) {
+                final var n = BigInteger.valueOf(moduli[i]);
+                final var cofactor = modulus.divide(n);
+                z = z.add(BigInteger.valueOf(remainders[i]).multiply(cofactor).multiply(cofactor.modInverse(n)));
+            }
+            out.add(z.mod(modulus).longValueExact());
+            return;
+        }
+        for (var r : numberToResidues[axis].getSecond()) {
+            remainders[axis] = r;
+            tuples(numberToResidues, axis + 1, remainders, moduli, out);
+        }
+    }
+
+    private static Pair<Models.NumberAndPower, List<Long>> axis(long prime, int power, Long... residues) {
+        return new Pair<>(new Models.NumberAndPower(prime, power, (long) Math.pow(prime, power)), List.of(residues));
+    }
+}
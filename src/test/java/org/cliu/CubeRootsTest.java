@@ -0,0 +1,86 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class CubeRootsTest {
+    // Packing keeps the roots and their order, including the third root, which is rebuilt from the other two.
+    @Test
+    public void testPackedRootsMatchComputation() {
+        final var primes = PrimeSource.first(5000);
+        for (var k : new long[]{3, 33, 42, -7, 1L << 40}) {
+            for (int i = 0; i < 5000; i++) {
+                final var p = primes.prime(i);
+                final var expected = Utils.cuberootOfPrimeComputation(k, p);
+                Assert.assertArrayEquals(expected, CubeRoots.unpack(CubeRoots.pack(expected), p));
+                Assert.assertArrayEquals(expected, CubeRoots.of(k, p));
+            }
+        }
+        // The largest primes below 2^31 still fit.
+        final var p = 2147483629L;
+        final var roots = Utils.cuberootOfPrimeComputation(2, p);
+        Assert.assertArrayEquals(roots, CubeRoots.unpack(CubeRoots.pack(roots), p));
+    }
+
+    // The precomputed roots are the computed ones, and other k still get their own roots.
+    @Test
+    public void testPrecomputedRoots() {
+        CubeRoots.precompute(165, 1 << 16);
+        final var primes = new PrimeSource(1 << 17);
+        for (int i = 0; i < primes.pi(1 << 17); i++) {
+            final var p = primes.prime(i);
+            Assert.assertArrayEquals(Utils.cuberootOfPrimeComputation(165, p), CubeRoots.of(165, p));
+            Assert.assertArrayEquals(Utils.cuberootOfPrimeComputation(166, p), CubeRoots.of(166, p));
+        }
+    }
+
+    // Threads that keep evicting each other's entries, with far more (k, p) than slots, still read the roots of their
+    // own (k, p).
+    @Test
+    public void testConcurrentEvictionsKeepRootsConsistent() throws Exception {
+        final var primes = new long[]{1000003, 1000033, 2147483629L};
+        final var threads = new Thread[8];
+        final var failures = new ConcurrentLinkedQueue<String>();
+        for (int t = 0; t < threads.length; t++) {
+            final var random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 25000; i++) {
+                    final long k = random.nextInt(4 * CubeRoots.cacheSlots);
+                    final var p = primes[random.nextInt(primes.length)];
+                    final var roots = CubeRoots.of(k, p);
+                    for (var r : roots) {
+                        if (Math.floorMod(r * r % p * r - k, p) != 0) failures.add(String.format("k=%s p=%s r=%s", k, p, r));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (var thread : threads) thread.join();
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    // Hensel lifting gives exactly the roots mod p^e, e.g. 3 cube roots of 1 mod 49, not 9.
+    @Test
+    public void testHenselLiftsSimpleRootsOnce() {
+        for (var k : new long[]{1, 3, 6, 42}) {
+            for (var p : new long[]{2, 3, 7, 13, 19}) {
+                for (int e = 1; e <= 3; e++) {
+                    final var q = (long) Math.pow(p, e);
+                    final var expected = new ArrayList<Long>();
+                    for (long x = 0; x < q; x++) {
+                        if (Math.floorMod(x * x * x - k, q) == 0) expected.add(x);
+                    }
+                    final var roots = Utils.hensel(new long[]{-k, 0L, 0L, 1L}, p, e, k);
+                    Arrays.sort(roots);
+                    Assert.assertEquals(String.format("k=%s p^e=%s^%s", k, p, e), expected.toString(), Arrays.toString(roots));
+                }
+            }
+        }
+        Assert.assertEquals(3, Utils.hensel(new long[]{-1L, 0L, 0L, 1L}, 7, 2, 1).length);
+    }
+}
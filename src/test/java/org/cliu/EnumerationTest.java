@@ -0,0 +1,109 @@
+package org.cliu;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+public class EnumerationTest {
+    private static final int numPrimes = 20;
+    private static final PrimeSource primes = PrimeSource.first(numPrimes);
+
+    // Every number in (min, max] without a factor 3 and with largest prime factor in the partitions, exactly once.
+    @Test
+    public void testMatchesBruteForce() {
+        final long min = 1000, max = 200000;
+        for (var range : new int[][]{{0, numPrimes}, {4, 9}, {19, 20}}) {
+            final var expected = bruteForce(min, max, range[0], range[1]);
+            final var actual = new ArrayList<Long>();
+            Enumeration.smoothNumbers(min, max, primes, range[0], range[1]).forEachRemaining(n -> {
+                var product = 1L;
+                for (int i = 0; i < n.size(); i++) {
+                    product *= (long) Math.pow(n.prime(i), n.power(i));
+                }
+                Assert.assertEquals(n.number(), product);
+                actual.add(n.number());
+            });
+            Assert.assertEquals(expected.size(), actual.size());
+            Assert.assertEquals(expected, new LongOpenHashSet(actual));
+        }
+    }
+
+    @Test
+    public void testSplitsCoverEverythingOnce() {
+        final long min = 1000, max = 200000;
+        final var expected = bruteForce(min, max, 0, numPrimes);
+        final var spliterator = Enumeration.smoothNumbers(min, max, primes, 0, numPrimes);
+        // Advance part way before splitting, so that splits also happen below the root.
+        final var actual = new ArrayList<Long>();
+        for (int i = 0; i < 100; i++) {
+            spliterator.tryAdvance(n -> actual.add(n.number()));
+        }
+        final var splits = new ArrayList<Spliterator<Models.NumberAndFactors>>();
+        splits.add(spliterator);
+        for (int i = 0; i < splits.size() && splits.size() < 64; i++) {
+            final var split = splits.get(i).trySplit();
+            if (null != split) splits.add(split);
+        }
+        Assert.assertTrue(splits.size() > 1);
+        for (var split : splits) {
+            split.forEachRemaining(n -> actual.add(n.number()));
+        }
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected, new LongOpenHashSet(actual));
+
+        final var parallel = StreamSupport.stream(Enumeration.smoothNumbers(min, max, primes, 0, numPrimes), true)
+                .map(Models.NumberAndFactors::number).collect(Collectors.toList());
+        Assert.assertEquals(expected.size(), parallel.size());
+        Assert.assertEquals(expected, new LongOpenHashSet(parallel));
+    }
+
+    // Pruning drops exactly the numbers with a prime power that has no cube root of k.
+    @Test
+    public void testPruningKeepsAdmissibleNumbers() {
+        final long min = 1000, max = 200000;
+        for (var k : new int[]{3, 33, 42}) {
+            final var expected = new LongOpenHashSet();
+            Enumeration.smoothNumbers(min, max, primes, 0, numPrimes).forEachRemaining(n -> {
+                for (int i = 0; i < n.size(); i++) {
+                    if (!hasCubeRoot(k, (long) Math.pow(n.prime(i), n.power(i)))) return;
+                }
+                expected.add(n.number());
+            });
+            final var admissibility = new Admissibility(k, primes, numPrimes);
+            final var actual = StreamSupport.stream(Enumeration.smoothNumbers(min, max, primes, 0, numPrimes, admissibility), true)
+                    .map(Models.NumberAndFactors::number).collect(Collectors.toList());
+            Assert.assertEquals(expected.size(), actual.size());
+            Assert.assertEquals(expected, new LongOpenHashSet(actual));
+            Assert.assertTrue(admissibility.pruned.sum() > 0);
+        }
+    }
+
+    private static boolean hasCubeRoot(int k, long modulus) {
+        for (long z = 0; z < modulus; z++) {
+            if (Math.floorMod(z * z * z - k, modulus) == 0) return true;
+        }
+        return false;
+    }
+
+    private static LongOpenHashSet bruteForce(long min, long max, int primeIdxFrom, int primeIdxTo) {
+        final var expected = new LongOpenHashSet();
+        for (long n = min + 1; n <= max; n++) {
+            if (n % 3 == 0) continue;
+            var rest = n;
+            var largestIdx = -1;
+            for (int i = 0; i < numPrimes; i++) {
+                while (rest % primes.prime(i) == 0) {
+                    rest /= primes.prime(i);
+                    largestIdx = i;
+                }
+            }
+            if (rest == 1 && largestIdx >= primeIdxFrom && largestIdx < primeIdxTo) expected.add(n);
+        }
+        return expected;
+    }
+}
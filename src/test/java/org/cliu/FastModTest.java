@@ -0,0 +1,26 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+
+public class FastModTest {
+    @Test
+    public void testMatchesFloorMod() {
+        final var random = new Random(42);
+        final var edges = new long[]{0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1};
+        for (var p : new int[]{2, 3, 5, 7, 11, 13, 211, 251, 65537, Integer.MAX_VALUE}) {
+            final var mod = FastMod.of(p);
+            for (var x : edges) {
+                Assert.assertEquals(String.format("x=%s p=%s", x, p), Math.floorMod(x, p), mod.floorMod(x));
+                Assert.assertEquals(String.format("x=%s p=%s", x + p, p), Math.floorMod(x + p, p), mod.floorMod(x + p));
+            }
+            for (int i = 0; i < 100000; i++) {
+                final var x = i % 2 == 0 ? random.nextLong() : random.nextInt();
+                Assert.assertEquals(String.format("x=%s p=%s", x, p), Math.floorMod(x, p), mod.floorMod(x));
+            }
+        }
+    }
+}
@@ -1,41 +1,61 @@
 package org.cliu;
 
 import cc.redberry.rings.primes.BigPrimes;
-import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.math.BigInteger;
 import java.time.Instant;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class HardcodedCasesTest {
     // Hard-coded case from https://math.mit.edu/~drew/NTW2020.pdf
-    @Test(expected = SquareFoundException.class)
+    @Test
     public void test3() {
         final var k = 3;
-        var d0For3 = new Models.NumberAndFactors(108398887211L, new Int2IntArrayMap(Map.of(167, 1, 649095133, 1)));
-        Runner.runOneDefaults(d0For3, k);
+        var d0For3 = new Models.NumberAndFactors(108398887211L, 167, 1, 649095133, 1);
+        assertSolution(Runner.runOneDefaults(d0For3, k), k, -472715493453327032L, "569936821221962380720", "-569936821113563493509");
+    }
+
+    // Same as above, with the z search for the single d split across threads.
+    @Test
+    public void test3Parallel() {
+        final var k = 3;
+        var d0For3 = new Models.NumberAndFactors(108398887211L, 167, 1, 649095133, 1);
+        final var pool = new ForkJoinPool(4);
+        try {
+            assertSolution(Runner.runOne(d0For3, k, Constants.zMax, Constants.c0, Constants.c1, Constants.c2, pool), k, -472715493453327032L, "569936821221962380720", "-569936821113563493509");
+        } finally {
+            pool.shutdown();
+        }
     }
 
     // Hard-coded case from https://math.mit.edu/~drew/NTW2020.pdf
-    @Test(expected = SquareFoundException.class)
+    @Test
     public void test42() {
         final var k = 42;
-        var d0For42 = new Models.NumberAndFactors(
-                102980666258459L,
-                new Int2IntArrayMap(Map.of(11, 1, 43, 1, 215921, 1, 1008323, 1)));
-        Runner.runOneDefaults(d0For42, k);
+        var d0For42 = new Models.NumberAndFactors(102980666258459L, 11, 1, 43, 1, 215921, 1, 1008323, 1);
+        assertSolution(Runner.runOneDefaults(d0For42, k), k, 12602123297335631L, "80435758145817515", "-80538738812075974");
     }
 
     // Hard-coded case from https://arxiv.org/pdf/2007.01209.pdf
-    @Test(expected = SquareFoundException.class)
+    @Test
     public void test165() {
         var dFor165Long = Math.abs(383344975542639445L - 385495523231271884L);
         var factors = BigPrimes.primeFactors(dFor165Long);
         final var k = 165;
-        var d0For165 = new Models.NumberAndFactors(
-                dFor165Long,
-                new Int2IntArrayMap(Map.of(599, 1, 410783, 1, 8739967, 1)));
-        Runner.runOneDefaults(d0For165, k);
+        var d0For165 = new Models.NumberAndFactors(dFor165Long, 599, 1, 410783, 1, 8739967, 1);
+        assertSolution(Runner.runOneDefaults(d0For165, k), k, 98422560467622814L, "383344975542639445", "-385495523231271884");
+    }
+
+    private static void assertSolution(List<Models.Solution> solutions, int k, long z, String x, String y) {
+        Assert.assertEquals(1, solutions.size());
+        final var solution = solutions.get(0);
+        Assert.assertEquals(k, solution.k());
+        Assert.assertEquals(z, solution.z());
+        Assert.assertEquals(new BigInteger(x), solution.x());
+        Assert.assertEquals(new BigInteger(y), solution.y());
     }
 
     // See https://math.mit.edu/~drew/NTW2020.pdf
@@ -46,9 +66,7 @@ public class HardcodedCasesTest {
     @Test
     public void testd5PerfTest() {
         final var k = 33;
-        var fiveD0 = new Models.NumberAndFactors(
-                5,
-                new Int2IntArrayMap(Map.of(5, 1)));
+        var fiveD0 = new Models.NumberAndFactors(5, 5, 1);
         Runner.runOne(fiveD0, k, (long) 1e11, Constants.c0, Constants.c1, Constants.c2 * 3);
         final var start = Instant.now();
         Runner.runOne(fiveD0, k, (long)1e14, Constants.c0, Constants.c1, Constants.c2 * 3);
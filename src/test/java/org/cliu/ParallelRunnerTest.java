@@ -0,0 +1,77 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelRunnerTest {
+    // The k=3 case from HardcodedCasesTest, hidden among d0s without solutions. Finding it must not stop the
+    // remaining d0s from being checked.
+    @Test
+    public void testSolutionFoundAmongOtherD0s() {
+        final var d0s = d0s();
+        final var progress = new ParallelRunner.Progress();
+        final var pool = new ForkJoinPool(4);
+        pool.invoke(new ParallelRunner.D0Task(d0s, 0, d0s.size(), Models.SearchParameters.defaults(3), progress, null));
+        pool.shutdown();
+
+        Assert.assertEquals(d0s.size(), progress.checked.sum());
+        Assert.assertEquals(1, progress.found.size());
+        Assert.assertEquals(-472715493453327032L, progress.found.peek().z());
+    }
+
+    @Test
+    public void testPipelinedSolutionFoundAmongOtherD0s() {
+        final var d0s = d0s();
+        final var progress = PipelinedRunner.run(d0s.iterator(), Models.SearchParameters.defaults(3), 2);
+
+        Assert.assertEquals(d0s.size(), progress.checked.sum());
+        Assert.assertEquals(1, progress.found.size());
+        Assert.assertEquals(-472715493453327032L, progress.found.peek().z());
+    }
+
+    // A d0 whose planning fails fails the run, instead of being dropped while the rest is reported as searched.
+    @Test
+    public void testPipelinedRunFailsWhenPlanningFails() {
+        final var d0s = d0s();
+        d0s.add(new Models.NumberAndFactors(0L));
+        try {
+            PipelinedRunner.run(d0s.iterator(), Models.SearchParameters.defaults(3), 2);
+            Assert.fail("The run should have failed");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("d0=0"));
+        }
+    }
+
+    // An error, and not only an exception, fails the run, and the d0s after it are not planned anymore.
+    @Test
+    public void testPipelinedRunStopsOnError() {
+        final var params = new Models.SearchParameters(3, (long) 1e12, Constants.c0, Constants.c1, Constants.c2);
+        final var d0 = d0s().get(0);
+        final var planned = new AtomicInteger();
+        try {
+            PipelinedRunner.run(Collections.nCopies(100000, d0).iterator(), params, 2, (next, context) -> {
+                if (planned.incrementAndGet() == 10) throw new StackOverflowError();
+                return Runner.plan(next, params, context);
+            });
+            Assert.fail("The run should have failed");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof StackOverflowError);
+        }
+        Assert.assertTrue(String.valueOf(planned.get()), planned.get() < 10 + 2 * PipelinedRunner.plansPerConsumer + 2);
+    }
+
+    private static List<Models.NumberAndFactors> d0s() {
+        final var d0s = new ArrayList<Models.NumberAndFactors>();
+        for (var p : new int[]{649095217, 649095247, 649095257, 649095281}) {
+            d0s.add(new Models.NumberAndFactors(p * 167L, 167, 1, p, 1));
+        }
+        d0s.add(2, new Models.NumberAndFactors(108398887211L, 167, 1, 649095133, 1));
+        return d0s;
+    }
+}
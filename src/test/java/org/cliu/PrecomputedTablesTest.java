@@ -0,0 +1,60 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class PrecomputedTablesTest {
+    // The mapped file holds the same S_d(p) rows and cube roots as computing them.
+    @Test
+    public void testRoundTrip() throws IOException {
+        final var path = Files.createTempFile("tables", ".bin");
+        try {
+            for (var k : new int[]{3, 42}) {
+                PrecomputedTables.write(path, k, 20000);
+                final var tables = PrecomputedTables.open(path);
+                Assert.assertNotNull(tables);
+                Assert.assertEquals(20000, tables.primeCount());
+                final var expected = SsubdTables.of(k);
+                for (int i = 0; i < Constants.A.size(); i++) {
+                    Assert.assertTrue(Arrays.deepEquals(expected.rows[i], tables.ssubdTables().rows[i]));
+                }
+                final var primes = PrimeSource.first(20000);
+                for (int i = 0; i < 20000; i++) {
+                    final var p = primes.prime(i);
+                    Assert.assertEquals(i, tables.indexOf(p));
+                    Assert.assertArrayEquals(Utils.cuberootOfPrimeComputation(k, p), CubeRoots.unpack(tables.packedCubeRoots(i), p));
+                }
+                // Not a prime, and past the last one.
+                Assert.assertEquals(-1, tables.indexOf(9));
+                Assert.assertEquals(-1, tables.indexOf(primes.prime(20000)));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // Files in another format aren't used.
+    @Test
+    public void testOtherVersionsAreIgnored() throws IOException {
+        final var path = Files.createTempFile("tables", ".bin");
+        try {
+            PrecomputedTables.write(path, 3, 100);
+            Assert.assertNotNull(PrecomputedTables.open(path));
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{(byte) (PrecomputedTables.version + 1)}), Long.BYTES);
+            }
+            Assert.assertNull(PrecomputedTables.open(path));
+            Files.write(path, new byte[3]);
+            Assert.assertNull(PrecomputedTables.open(path));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrimeSourceTest {
+    // Matches the primes4j table, across several segments.
+    @Test
+    public void testPrimeByIndex() {
+        final var expected = Utils.primes(100000);
+        final var source = PrimeSource.first(expected.length);
+        // Out of order, so that segments get sieved on demand from both ends.
+        Assert.assertEquals(expected[expected.length - 1], source.prime(expected.length - 1));
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], source.prime(i));
+        }
+    }
+
+    @Test
+    public void testPi() {
+        final var expected = Utils.primes(100000);
+        final var source = new PrimeSource(expected[expected.length - 1]);
+        var count = 0;
+        for (long x = 0; x <= expected[expected.length - 1]; x++) {
+            if (count < expected.length && expected[count] == x) count++;
+            Assert.assertEquals(count, source.pi(x));
+        }
+        Assert.assertEquals(expected.length - 1, source.indexOfLargestAtMost(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,72 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+public class ProgressJournalTest {
+    @Test
+    public void testResumeSkipsRecordedWork() throws IOException {
+        final var path = Files.createTempFile("journal", ".log");
+        final var params = Models.SearchParameters.defaults(3);
+        try (var journal = ProgressJournal.open(path, params, false)) {
+            journal.markD0Done(108398887211L, 649095133);
+            journal.markPartitionDone(649095133);
+        }
+        // A crash in the middle of writing a record.
+        Files.write(path, "D 3 5000000".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        try (var journal = ProgressJournal.open(path, params, true)) {
+            Assert.assertTrue(journal.isPartitionDone(649095133));
+            Assert.assertFalse(journal.isD0Done(5000000L));
+            journal.markD0Done(5L, 5);
+        }
+        try (var journal = ProgressJournal.open(path, params, true)) {
+            Assert.assertTrue(journal.isD0Done(5L));
+        }
+        // Work done with other search parameters is not skipped.
+        try (var journal = ProgressJournal.open(path, new Models.SearchParameters(3, params.zMax(), params.c0(), params.c1(), params.c2() + 1), true)) {
+            Assert.assertFalse(journal.isD0Done(5L));
+            Assert.assertFalse(journal.isPartitionDone(649095133));
+        }
+        // Without resuming, nothing is reported as done.
+        try (var journal = ProgressJournal.open(path, params, false)) {
+            Assert.assertFalse(journal.isD0Done(5L));
+        }
+        Files.delete(path);
+    }
+
+    // The d0s of finished partitions are dropped from the journal, and from what a resume loads.
+    @Test
+    public void testFinishedPartitionsAreCompacted() throws IOException {
+        final var path = Files.createTempFile("journal", ".log");
+        final var params = Models.SearchParameters.defaults(3);
+        final var other = new Models.SearchParameters(42, params.zMax(), params.c0(), params.c1(), params.c2());
+        try (var journal = ProgressJournal.open(path, other, false)) {
+            journal.markD0Done(7L * 11, 11);
+        }
+        try (var journal = ProgressJournal.open(path, params, false)) {
+            for (long d0 = 7; d0 < 7 * 1000; d0 += 7) journal.markD0Done(d0 * 11, 11);
+            journal.markD0Done(7L * 13, 13);
+            journal.markPartitionDone(11);
+        }
+        final var sizeBefore = Files.size(path);
+        try (var journal = ProgressJournal.open(path, params, true)) {
+            Assert.assertTrue(journal.isPartitionDone(11));
+            Assert.assertFalse(journal.isD0Done(7L * 11));
+            Assert.assertTrue(journal.isD0Done(7L * 13));
+        }
+        final var lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+        Assert.assertTrue(Files.size(path) < sizeBefore / 100);
+        // What's left: the record of the other search, the d0 of the unfinished partition and the finished partition.
+        Assert.assertEquals(3, lines.size());
+        try (var journal = ProgressJournal.open(path, other, true)) {
+            Assert.assertTrue(journal.isD0Done(7L * 11));
+        }
+        Files.delete(path);
+    }
+}
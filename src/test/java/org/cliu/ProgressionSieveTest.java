@@ -0,0 +1,43 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class ProgressionSieveTest {
+    // The sieve should keep exactly the z that pass the S_d(p) filter one at a time, across several windows.
+    @Test
+    public void testSurvivorsMatchTheWalk() {
+        final var d0 = new Models.NumberAndFactors(5, 5, 1);
+        final var plan = Runner.plan(d0, 33, (long) 1e11, Constants.c0, Constants.c1, Constants.c2 * 3);
+        final var lookups = plan.lookups();
+        // m is too large here for step 4 to pick the sieve by itself.
+        Assert.assertNull(lookups.sieve());
+        final var sieve = ProgressionSieve.of(lookups.primesInB(), lookups.ssubdCandidateLookupTable(), lookups.multiplierMModBCache(), lookups.reducers());
+
+        final var Zm = plan.crt().iterator(0, plan.crt().size());
+        for (int r = 0; r < 5 && Zm.hasNext(); r++) {
+            final var z0 = Zm.nextLong();
+            final var steps = 3L * ProgressionSieve.windowBits + 12345;
+            final var sieved = new ArrayList<Long>();
+            sieve.forEachSurvivor(z0, steps, lookups.multiplierM(), new SearchContext(), sieved::add);
+            Assert.assertEquals(walk(z0, steps, lookups), sieved);
+        }
+    }
+
+    private static List<Long> walk(long z0, long steps, Step4.AuxPrimeLookups lookups) {
+        final var survivors = new ArrayList<Long>();
+        var z = z0;
+        for (long j = 0; j < steps; j++, z += lookups.multiplierM()) {
+            var passes = true;
+            for (var p : lookups.primesInB()) {
+                passes &= SsubdTables.contains(lookups.ssubdCandidateLookupTable()[p - 1], Math.floorMod(z, (long) p));
+            }
+            if (passes) survivors.add(z);
+        }
+        return survivors;
+    }
+}
@@ -0,0 +1,93 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class SearchContextTest {
+    // The roots of 1 and 6 mod 7 are different, and so must be what the shared cache returns for them.
+    @Test
+    public void testCubeRootsDependOnK() {
+        for (var k : new long[]{1, 6, 1, 6}) {
+            final var roots = Utils.hensel(new long[]{-k, 0L, 0L, 1L}, 7, 1, k);
+            Assert.assertEquals(3, roots.length);
+            for (var r : roots) Assert.assertEquals(k, r * r * r % 7);
+        }
+    }
+
+    // Planning on many threads at once, for two k, should give the same plans as planning on one.
+    @Test
+    public void testConcurrentPlansMatchSequentialOnes() throws Exception {
+        final var random = new Random(42);
+        final var work = new ArrayList<long[]>();
+        for (var k : new int[]{3, 42}) {
+            for (int i = 0; i < 200; i++) {
+                // 167 p, with p among the primes below 2^30.
+                work.add(new long[]{k, 167L * (PrimeSource.sqrtFloor(1L << 60) - random.nextInt(1 << 20))});
+            }
+        }
+        final var expected = new ArrayList<List<Long>>();
+        for (var w : work) expected.add(summary((int) w[0], w[1]));
+
+        final var order = new ArrayList<Integer>();
+        for (int i = 0; i < work.size(); i++) order.add(i);
+        Collections.shuffle(order, random);
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        final var results = new ArrayList<Future<List<Long>>>();
+        for (var i : order) results.add(pool.submit(() -> summary((int) work.get(i)[0], work.get(i)[1])));
+        for (int j = 0; j < order.size(); j++) {
+            Assert.assertEquals(expected.get(order.get(j)), results.get(j).get());
+        }
+        pool.shutdown();
+    }
+
+    // Tasks on a new thread each, as on virtual threads, should plan as on one thread, and only make as many contexts as
+    // ran at once.
+    @Test
+    public void testPooledContextsAcrossShortLivedThreads() throws Exception {
+        final var random = new Random(7);
+        final var pool = new SearchContext.Pool();
+        final var threadsAtOnce = 4;
+        for (int round = 0; round < 10; round++) {
+            final var d0s = new long[threadsAtOnce];
+            final var threads = new Thread[threadsAtOnce];
+            final var results = new ArrayList<List<Long>>(Collections.nCopies(threadsAtOnce, null));
+            for (int i = 0; i < threadsAtOnce; i++) {
+                d0s[i] = 167L * (PrimeSource.sqrtFloor(1L << 60) - random.nextInt(1 << 20));
+                final var index = i;
+                threads[i] = new Thread(() -> {
+                    final var context = pool.take();
+                    results.set(index, summary(42, d0s[index], context));
+                    pool.giveBack(context);
+                });
+                threads[i].start();
+            }
+            for (var thread : threads) thread.join();
+            for (int i = 0; i < threadsAtOnce; i++) Assert.assertEquals(summary(42, d0s[i]), results.get(i));
+            Assert.assertTrue(pool.idle() <= threadsAtOnce);
+        }
+    }
+
+    private static List<Long> summary(int k, long d0) {
+        return summary(k, d0, SearchContext.get());
+    }
+
+    // m, |Z_m| and the first few residues of the plan for d0 = 167 * p, or nothing when p isn't prime.
+    private static List<Long> summary(int k, long d0, SearchContext context) {
+        final var p = d0 / 167;
+        if (!java.math.BigInteger.valueOf(p).isProbablePrime(30)) return List.of();
+        final var plan = Runner.plan(new Models.NumberAndFactors(d0, 167, 1, (int) p, 1), k, (long) 1e16, Constants.c0, Constants.c1, Constants.c2, context);
+        final var summary = new ArrayList<Long>(List.of(plan.m(), plan.crt().size()));
+        final var Zm = plan.crt().iterator(0, plan.crt().size());
+        for (int i = 0; i < 8 && Zm.hasNext(); i++) summary.add(Zm.nextLong());
+        return summary;
+    }
+}
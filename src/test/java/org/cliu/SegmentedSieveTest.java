@@ -0,0 +1,88 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Spliterator;
+
+public class SegmentedSieveTest {
+    // Every d of the window without a factor 3 comes out once, in order, with its prime factorization.
+    @Test
+    public void testFactorsEveryD() {
+        for (var window : new long[][]{{1, 100000}, {(long) 1e9 - 12345, (long) 1e9 + 3 * SegmentedSieve.blockSize}}) {
+            final var next = new long[]{window[0]};
+            new SegmentedSieve(window[0], window[1]).forEachRemaining(d -> {
+                while (next[0] % 3 == 0) next[0]++;
+                Assert.assertEquals(next[0]++, d.number());
+                assertFactorization(d);
+                for (int i = 0; i < d.size(); i++) {
+                    Assert.assertTrue(BigInteger.valueOf(d.prime(i)).isProbablePrime(30));
+                }
+            });
+            while (next[0] % 3 == 0) next[0]++;
+            Assert.assertEquals(window[1] + 1, next[0]);
+        }
+    }
+
+    // d with a prime factor that doesn't fit in an int are skipped and counted, so this compares against the unsplit
+    // sieve.
+    @Test
+    public void testSplitsCoverTheWindowOnce() {
+        final long min = (long) 1e15, max = min + 8 * SegmentedSieve.minSplitSize;
+        final var unsplitSieve = new SegmentedSieve(min, max);
+        final var unsplit = sumAndCount(unsplitSieve);
+        // Every d not divisible by 3 is either handed out or skipped.
+        var notDivisibleBy3 = 0L;
+        for (long d = min; d <= max; d++) if (d % 3 != 0) notDivisibleBy3++;
+        Assert.assertTrue(unsplitSieve.skippedLargePrimes() > 0);
+        Assert.assertEquals(notDivisibleBy3, unsplit[1] + unsplitSieve.skippedLargePrimes());
+
+        final var sieve = new SegmentedSieve(min, max);
+        final var first = new long[2];
+        // Start before splitting, so that a sieve in the middle of a block is split too.
+        for (int i = 0; i < 10; i++) {
+            sieve.tryAdvance(d -> {
+                first[0] += d.number();
+                first[1]++;
+            });
+        }
+        final var splits = new ArrayList<Spliterator<Models.NumberAndFactors>>();
+        splits.add(sieve);
+        for (int i = 0; i < splits.size(); i++) {
+            final var split = splits.get(i).trySplit();
+            if (null != split) splits.add(split);
+        }
+        Assert.assertTrue(splits.size() > 1);
+        var sum = first[0];
+        var count = first[1];
+        for (var split : splits) {
+            final var sumAndCount = sumAndCount(split);
+            sum += sumAndCount[0];
+            count += sumAndCount[1];
+        }
+        Assert.assertEquals(unsplit[0], sum);
+        Assert.assertEquals(unsplit[1], count);
+        Assert.assertEquals(unsplitSieve.skippedLargePrimes(), sieve.skippedLargePrimes());
+    }
+
+    private static long[] sumAndCount(Spliterator<Models.NumberAndFactors> spliterator) {
+        final var sumAndCount = new long[2];
+        spliterator.forEachRemaining(d -> {
+            assertFactorization(d);
+            sumAndCount[0] += d.number();
+            sumAndCount[1]++;
+        });
+        return sumAndCount;
+    }
+
+    private static void assertFactorization(Models.NumberAndFactors d) {
+        var product = 1L;
+        for (int i = 0; i < d.size(); i++) {
+            Assert.assertTrue(d.power(i) > 0);
+            for (int j = 0; j < d.power(i); j++) product *= d.prime(i);
+        }
+        Assert.assertEquals(d.number(), product);
+    }
+}
@@ -0,0 +1,84 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+
+public class SquareCheckTest {
+    @Test
+    public void testGoodMask() {
+        Assert.assertEquals(0xC840C04048404040L, GenericUtils.goodMask);
+    }
+
+    // (c, t, -t) and (1 + 6t^3, 1 - 6t^3, -6t^2) are solutions for k = c^3 and k = 2, on all three paths.
+    @Test
+    public void testSolutionFamiliesAreSquares() {
+        for (long c = 1; c <= 10; c++) {
+            // t = c gives x = y, and 0.
+            for (long t = c + 1; t < 1L << 60; t = t * 3 + c) {
+                final var k = (int) (c * c * c);
+                Assert.assertTrue(String.format("k=%s t=%s", k, t), SquareCheck.isSquareCandidate(c + t, -t, k));
+            }
+        }
+        for (long t = 1; t < 1000000; t = t * 2 + 1) {
+            Assert.assertTrue("t=" + t, SquareCheck.isSquareCandidate(2, -6 * t * t, 2));
+        }
+    }
+
+    @Test
+    public void testKnownSolutionsAreSquares() {
+        Assert.assertTrue(SquareCheck.isSquareCandidate(102980666258459L, 12602123297335631L, 42));
+        Assert.assertTrue(SquareCheck.isSquareCandidate(2150547688632439L, 98422560467622814L, 165));
+        Assert.assertTrue(SquareCheck.isSquareCandidate(108398887211L, -472715493453327032L, 3));
+    }
+
+    @Test
+    public void testMatchesBigInteger() {
+        final var random = new Random(42);
+        for (int i = 0; i < 1000000; i++) {
+            final var bits = 1 + random.nextInt(62);
+            final var d = 1 + (random.nextLong() >>> (64 - Math.min(bits, 50)));
+            final var z = random.nextLong() >> (64 - bits);
+            final var k = random.nextInt(2000) - 1000;
+            Assert.assertEquals(String.format("d=%s z=%s k=%s", d, z, k), SquareCheck.isSquareBigInteger(d, z, k), SquareCheck.isSquareCandidate(d, z, k));
+        }
+    }
+
+    // d in [2^32, 2^40), where d^2 no longer fits in 64 bits but the fixed-width check is still used.
+    @Test
+    public void testMatchesBigIntegerForWideD() {
+        Assert.assertEquals(SquareCheck.isSquareBigInteger(12884901888L, -109, 15), SquareCheck.isSquareCandidate(12884901888L, -109, 15));
+        final var random = new Random(42);
+        for (int i = 0; i < 1000000; i++) {
+            final var d = (1L << 32) + (random.nextLong() >>> 24) % ((1L << 40) - (1L << 32));
+            final var z = random.nextLong() >> (64 - 1 - random.nextInt(24));
+            final var k = random.nextInt(2000) - 1000;
+            Assert.assertEquals(String.format("d=%s z=%s k=%s", d, z, k), SquareCheck.isSquareBigInteger(d, z, k), SquareCheck.isSquareCandidate(d, z, k));
+        }
+    }
+
+    // The bounds of the search, d up to 3e17 and |z| up to 5e18, go through the 256-bit check. Random values are
+    // almost never squares, so the neighbours of the solutions of k = c^3 are checked as well.
+    @Test
+    public void testMatchesBigIntegerForSearchBounds() {
+        final var random = new Random(42);
+        for (int i = 0; i < 1000000; i++) {
+            final var d = (long) 1e17 + (random.nextLong() >>> 1) % (long) 2e17;
+            final var z = (random.nextLong() >> 1) % (long) 5e18;
+            final var k = random.nextInt(2000) - 1000;
+            Assert.assertEquals(String.format("d=%s z=%s k=%s", d, z, k), SquareCheck.isSquareBigInteger(d, z, k), SquareCheck.isSquareCandidate(d, z, k));
+        }
+        for (int i = 0; i < 100000; i++) {
+            final var c = 1 + random.nextInt(10);
+            final var t = (long) 1e17 + (random.nextLong() >>> 1) % (long) 2e17;
+            for (int j = 0; j < 9; j++) {
+                final var d = c + t + j % 3 - 1;
+                final var z = -t + j / 3 - 1;
+                final var k = c * c * c;
+                Assert.assertEquals(String.format("d=%s z=%s k=%s", d, z, k), SquareCheck.isSquareBigInteger(d, z, k), SquareCheck.isSquareCandidate(d, z, k));
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SsubdTablesTest {
+    // Every small solution of x^3 + y^3 + z^3 = k, for k up to 100 and not only k = +-3 mod 9, has z mod p in
+    // S_d(p) with d = |x + y|, for every aux prime p.
+    @Test
+    public void testSmallSolutionsAreInSsubd() {
+        final var solutions = smallSolutions(100, 200);
+        Assert.assertTrue(solutions.size() > 50);
+        for (var s : solutions) {
+            final var k = (int) s[0];
+            final var d = Math.abs(s[1] + s[2]);
+            final var z = s[3];
+            if (d == 0 || d % 3 == 0) continue;
+            for (int p : Constants.A) {
+                Assert.assertTrue(String.format("k=%d x=%d y=%d z=%d p=%d", k, s[1], s[2], z, p),
+                        Utils.isInSSubD(d, p, k, Math.floorMod(z, (long) p)));
+            }
+        }
+    }
+
+    // For k = +-3 mod 9 the sign is pinned, so S_d(p) is the set of the original formula.
+    @Test
+    public void testPinnedKMatchesFormula() {
+        for (var k : new int[]{3, 33, 42, 165}) {
+            for (int p : new int[]{5, 7, 11, 101, 251}) {
+                for (long d = 1; d < 3 * p; d++) {
+                    if (d % 3 == 0) continue;
+                    final var s = Constants.getEps(k) * (d % 3 == 2 ? -1 : 1);
+                    final var expected = new ArrayList<Long>();
+                    for (long z = 0; z < p; z++) {
+                        final var candidate = Math.floorMod(3 * d * (4 * s * (z * z * z - k) - d * d * d), (long) p);
+                        if (isSquareModP(candidate, p)) expected.add(z);
+                    }
+                    Assert.assertEquals(expected, Utils.SsubdP(d, p, k));
+                }
+            }
+        }
+    }
+
+    // Only k = +-3 mod 9 get the sign from d, the other rows hold both.
+    @Test
+    public void testUnpinnedKIsUnionOfSigns() {
+        final var row = Utils.isInSSubDCache(1, 1, 7, 2);
+        Assert.assertTrue(SsubdTables.size(row) >= 1);
+        Assert.assertEquals(SsubdTables.values(row).size(), SsubdTables.size(row));
+        for (long z = 0; z < 7; z++) {
+            var either = false;
+            for (long s = -1; s <= 1; s += 2) {
+                either |= isSquareModP(Math.floorMod(3 * (4 * s * (z * z * z - 2) - 1), 7L), 7);
+            }
+            Assert.assertEquals(either, SsubdTables.contains(row, z));
+        }
+    }
+
+    private static boolean isSquareModP(long c, long p) {
+        for (long i = 0; i < p; i++) {
+            if (i * i % p == c) return true;
+        }
+        return false;
+    }
+
+    // {k, x, y, z} for 1 <= k <= kMax, |x|, |y|, |z| <= bound, with each of x, y, z as the last.
+    private static List<long[]> smallSolutions(int kMax, long bound) {
+        final var solutions = new ArrayList<long[]>();
+        for (long x = -bound; x <= bound; x++) {
+            for (long y = x; y <= bound; y++) {
+                final var r = x * x * x + y * y * y;
+                final var low = (long) Math.floor(Math.cbrt(1 - r)) - 1;
+                final var high = (long) Math.ceil(Math.cbrt(kMax - r)) + 1;
+                for (long z = Math.max(low, y); z <= Math.min(high, bound); z++) {
+                    final var k = r + z * z * z;
+                    if (k < 1 || k > kMax) continue;
+                    solutions.add(new long[]{k, x, y, z});
+                    solutions.add(new long[]{k, y, z, x});
+                    solutions.add(new long[]{k, x, z, y});
+                }
+            }
+        }
+        return solutions;
+    }
+}
@@ -0,0 +1,47 @@
+package org.cliu;
+
+import org.apache.commons.math3.util.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class Step2Test {
+    // The planner with scratch space picks the same a and b as sorting the boxed S_d(p) sizes for every d.
+    @Test
+    public void testMatchesBoxedPlanner() {
+        final var scratch = new PlannerScratch();
+        final var primes = PrimeSource.first(1000);
+        for (var k : new int[]{3, 33}) {
+            final var q = k == 3 ? 162 : 486;
+            Enumeration.smoothNumbers(1000000, 1100000, primes, 0, 1000).forEachRemaining(d -> {
+                final var expectedA = boxedStep2(d, q, k, Constants.zMax, Constants.c0, Constants.c1);
+                final var a = Step2.step2(d, q, k, Constants.zMax, Constants.c0, Constants.c1, scratch);
+                Assert.assertEquals(expectedA.toString(), a.toString());
+                final var expectedB = Step3.step3(d, expectedA, Constants.c2);
+                Assert.assertEquals(expectedB.toString(), Step3.step3(d, a, Constants.c2, scratch).toString());
+            });
+        }
+    }
+
+    private static Models.NumberAndFactors boxedStep2(Models.NumberAndFactors d0, int q, int k, long zMax, long c0, long c1) {
+        var a = new Models.NumberAndFactors(1L);
+        var c1Prod = d0.multiply(c1 * q);
+        if (c1Prod == null || c1Prod.number() > zMax) return a;
+
+        final List<Pair<Integer, Double>> logSquareOverLogP = new ArrayList<>();
+        for (var p : Constants.A) {
+            if (d0.hasFactor(p)) continue;
+            logSquareOverLogP.add(new Pair<>(p, Math.log(Utils.SsubdP(d0.number(), p, k).size()) / Math.log(p)));
+        }
+        logSquareOverLogP.sort(Comparator.comparing(Pair::getSecond));
+        for (var prime : logSquareOverLogP) {
+            var c0Prod = d0.multiply(c0 * prime.getFirst() * a.number());
+            if (null == c0Prod || c0Prod.number() > zMax || null == a.multiply(prime.getFirst())) break;
+            a = a.multiply(prime.getFirst());
+        }
+        return a;
+    }
+}
@@ -0,0 +1,93 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.TreeMap;
+
+public class TuningProfileTest {
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final var byBucket = new TreeMap<Integer, Models.PlanConstants>();
+        byBucket.put(40, new Models.PlanConstants(2, 25, 12));
+        byBucket.put(56, new Models.PlanConstants(8, 100, 3));
+        final var profile = new TuningProfile(33, (long) 5e18, byBucket);
+        final var path = Files.createTempFile("tuning", ".properties");
+        try {
+            profile.save(path);
+            final var loaded = TuningProfile.load(path);
+            Assert.assertEquals(profile.toString(), loaded.toString());
+            Assert.assertEquals(profile.id(), loaded.id());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+
+        final var fallback = new Models.PlanConstants(4, 50, 6);
+        Assert.assertEquals(byBucket.get(40), profile.constantsFor(1L << 30, fallback));
+        Assert.assertEquals(byBucket.get(40), profile.constantsFor(1L << 48, fallback));
+        Assert.assertEquals(byBucket.get(56), profile.constantsFor(1L << 49, fallback));
+        Assert.assertEquals(byBucket.get(56), profile.constantsFor((long) 3e17, fallback));
+        Assert.assertEquals(fallback, new TuningProfile(33, (long) 5e18, new TreeMap<>()).constantsFor(1000, fallback));
+
+        final var params = new Models.SearchParameters(33, (long) 5e18, 4, 50, 6, profile);
+        Assert.assertEquals(byBucket.get(56), params.constantsFor((long) 1e17));
+    }
+
+    // Profiles that differ in any constant, bucket, k or zMax get different ids, and equal ones the same.
+    @Test
+    public void testIdDependsOnEveryProperty() {
+        final var ids = new HashSet<String>();
+        for (var k : new int[]{33, 42}) {
+            for (var zMax : new long[]{(long) 1e16, (long) 5e18}) {
+                for (var bucket = 30; bucket < 60; bucket++) {
+                    for (var c0 = 1; c0 <= 4; c0++) {
+                        final var byBucket = new TreeMap<Integer, Models.PlanConstants>();
+                        byBucket.put(bucket, new Models.PlanConstants(c0, 25, 12));
+                        final var id = new TuningProfile(k, zMax, byBucket).id();
+                        Assert.assertEquals(64, id.length());
+                        Assert.assertEquals(id, new TuningProfile(k, zMax, new TreeMap<>(byBucket)).id());
+                        Assert.assertTrue(ids.add(id));
+                    }
+                }
+            }
+        }
+        // The same constants in other buckets.
+        final var a = new TreeMap<Integer, Models.PlanConstants>();
+        a.put(40, new Models.PlanConstants(2, 25, 12));
+        a.put(56, new Models.PlanConstants(8, 100, 3));
+        final var b = new TreeMap<Integer, Models.PlanConstants>();
+        b.put(40, new Models.PlanConstants(8, 100, 3));
+        b.put(56, new Models.PlanConstants(2, 25, 12));
+        Assert.assertNotEquals(new TuningProfile(33, (long) 5e18, a).id(), new TuningProfile(33, (long) 5e18, b).id());
+    }
+
+    // A profile saved in the working directory is only used for the zMax it was tuned for, and only when asked for.
+    @Test
+    public void testSavedProfileMatchesZMax() throws Exception {
+        final var k = 99991;
+        final var byBucket = new TreeMap<Integer, Models.PlanConstants>();
+        byBucket.put(40, new Models.PlanConstants(2, 25, 12));
+        final var path = TuningProfile.defaultPath(k);
+        new TuningProfile(k, (long) 1e10, byBucket).save(path);
+        try {
+            Assert.assertNull(TuningProfile.saved(k, (long) 1e12));
+            Assert.assertNotNull(TuningProfile.saved(k, (long) 1e10));
+            Assert.assertNull(TuningProfile.saved(k, (long) 1e12));
+            Assert.assertNull(Models.SearchParameters.defaults(k).profile());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testTunesEveryBucket() {
+        final var profile = Autotuner.tune(33, (long) 1e10, 1000, 3000, 1);
+        final var fallback = new Models.PlanConstants(-1, -1, -1);
+        for (var d : new long[]{1000, 2000, 3000}) {
+            final var c = profile.constantsFor(d, fallback);
+            Assert.assertNotEquals(fallback, c);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+
+public class VectorWalkTest {
+    // The vector walk should keep exactly the z that pass the S_d(p) filter one at a time.
+    @Test
+    public void testSurvivorsMatchTheWalk() {
+        Assume.assumeTrue("No vector walk on this JVM", null != Step4.vectorWalk);
+        final var d0 = new Models.NumberAndFactors(5, 5, 1);
+        final var plan = Runner.plan(d0, 33, (long) 1e11, Constants.c0, Constants.c1, Constants.c2 * 3);
+        final var lookups = plan.lookups();
+
+        final var Zm = plan.crt().iterator(0, plan.crt().size());
+        for (int r = 0; r < 5 && Zm.hasNext(); r++) {
+            final var z0 = Zm.nextLong();
+            final var steps = 100003L;
+            final var vectorized = new ArrayList<Long>();
+            Step4.vectorWalk.forEachSurvivor(z0, steps, lookups, new SearchContext(), vectorized::add);
+            final var expected = new ArrayList<Long>();
+            var z = z0;
+            for (long j = 0; j < steps; j++, z += lookups.multiplierM()) {
+                if (lookups.wheels().passes(z)) expected.add(z);
+            }
+            Assert.assertEquals(expected, vectorized);
+        }
+    }
+}
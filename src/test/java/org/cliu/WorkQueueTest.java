@@ -0,0 +1,159 @@
+package org.cliu;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class WorkQueueTest {
+    @Test
+    public void testClaimRenewAndReclaim() throws IOException {
+        final var dir = Files.createTempDirectory("queue");
+        WorkQueue.create(dir, 3, 300, 3);
+        final var now = new AtomicLong(0);
+        final var queue = new WorkQueue(dir, 1000, now::get);
+
+        // Units with the largest primes come first, and no unit is handed out twice.
+        final var first = queue.claim("a").orElseThrow();
+        Assert.assertEquals(new WorkQueue.Unit("000000", 3, 200, 300), first);
+        final var second = queue.claim("b").orElseThrow();
+        Assert.assertEquals(new WorkQueue.Unit("000001", 3, 100, 200), second);
+        final var third = queue.claim("c").orElseThrow();
+        Assert.assertTrue(queue.claim("d").isEmpty());
+
+        // Worker "a" keeps renewing, worker "b" dies.
+        now.set(900);
+        Assert.assertTrue(queue.renew(first, "a"));
+        queue.complete(third, "c", 10, List.of());
+        now.set(1500);
+        Assert.assertTrue(queue.renew(first, "a"));
+        final var reclaimed = queue.claim("d").orElseThrow();
+        Assert.assertEquals(second, reclaimed);
+        Assert.assertFalse(queue.renew(second, "b"));
+
+        // Only the worker holding the lease can complete a unit.
+        Assert.assertFalse(queue.complete(second, "b", 0, List.of()));
+        Assert.assertTrue(queue.complete(first, "a", 20, List.of()));
+        Assert.assertTrue(queue.complete(reclaimed, "d", 30, List.of("FOUND SQUARE!!")));
+        now.set(10000);
+        Assert.assertTrue(queue.claim("e").isEmpty());
+    }
+
+    // Two workers on one queue: "a" stalls on its unit, "b", whose clock is ahead, sees the lease as expired and takes
+    // the unit over. "a" then stops at its next renewal, and never completes the unit.
+    @Test
+    public void testStalledWorkerIsCancelled() throws Exception {
+        final var dir = Files.createTempDirectory("queue");
+        WorkQueue.create(dir, 3, 300, 2);
+        final var started = new CountDownLatch(1);
+        final var stopped = new AtomicBoolean();
+        final var a = new WorkQueue(dir, 300, System::currentTimeMillis);
+        final var workerA = new Thread(() -> a.work("a", Models.SearchParameters::defaults, (unit, params, progress) -> {
+            started.countDown();
+            final var deadline = System.currentTimeMillis() + 10000;
+            while (!progress.cancelled.get() && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            stopped.set(progress.cancelled.get());
+            return progress;
+        }));
+        workerA.start();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        final var claimedByB = new ArrayList<String>();
+        new WorkQueue(dir, 300, () -> System.currentTimeMillis() + 60000).work("b", Models.SearchParameters::defaults, (unit, params, progress) -> {
+            claimedByB.add(unit.id());
+            progress.checked.increment();
+            return progress;
+        });
+        workerA.join(20000);
+
+        Assert.assertFalse(workerA.isAlive());
+        Assert.assertTrue(stopped.get());
+        Assert.assertEquals(List.of("000000", "000001"), claimedByB);
+        for (var id : claimedByB) {
+            final var done = new Properties();
+            try (var reader = Files.newBufferedReader(dir.resolve(id + ".done"))) {
+                done.load(reader);
+            }
+            Assert.assertEquals("b", done.getProperty("worker"));
+        }
+    }
+
+    // Separate worker JVMs on one queue directory, as in a real deployment: each unit is run by exactly one of them,
+    // and marked done by that worker.
+    @Test
+    public void testWorkerJvmsRunEachUnitOnce() throws Exception {
+        final var dir = Files.createTempDirectory("queue");
+        final var unitCount = 40;
+        WorkQueue.create(dir, 3, 4000, unitCount);
+        final var workers = new ArrayList<Process>();
+        for (var id : List.of("a", "b", "c")) {
+            final var command = new ArrayList<String>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            if (ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+                command.add("--enable-preview");
+            }
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"), Worker.class.getName(), dir.toString(), id));
+            workers.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        for (var worker : workers) {
+            Assert.assertTrue(worker.waitFor(60, TimeUnit.SECONDS));
+            Assert.assertEquals(0, worker.exitValue());
+        }
+
+        final var ranBy = new HashMap<String, String>();
+        for (var id : List.of("a", "b", "c")) {
+            final var ran = dir.resolve(id + ".ran");
+            if (!Files.exists(ran)) continue;
+            for (var unit : Files.readAllLines(ran)) {
+                Assert.assertNull("Unit " + unit + " ran twice", ranBy.put(unit, id));
+            }
+        }
+        Assert.assertEquals(unitCount, ranBy.size());
+        for (var entry : ranBy.entrySet()) {
+            final var done = new Properties();
+            try (var reader = Files.newBufferedReader(dir.resolve(entry.getKey() + ".done"))) {
+                done.load(reader);
+            }
+            Assert.assertEquals(entry.getValue(), done.getProperty("worker"));
+        }
+    }
+
+    // Worker JVM of `testWorkerJvmsRunEachUnitOnce`: appends the id of each unit it runs to `<worker>.ran`.
+    public static class Worker {
+        public static void main(String[] args) {
+            final var dir = Path.of(args[0]);
+            final var workerId = args[1];
+            new WorkQueue(dir).work(workerId, Models.SearchParameters::defaults, (unit, params, progress) -> {
+                try {
+                    Files.writeString(dir.resolve(workerId + ".ran"), unit.id() + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    Thread.sleep(20);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                progress.checked.increment();
+                return progress;
+            });
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.cliu;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.function.LongConsumer;
+
+/**
+ * SIMD version of the walk in step 4, filtering `lanes` consecutive z of a progression at once: lane t holds
+ * z + t * multiplierM. For each wheel of `AuxPrimeWheels`, the lanes keep z mod Q in an int vector that steps by
+ * lanes * multiplierM mod Q, and the words of the wheel's bitset are gathered at those residues. The lanes that pass
+ * every wheel are handed over one by one for the square test.
+ *
+ * The gathered words are longs, so the residues use a shape half as wide, with the same number of lanes. Only loaded
+ * when jdk.incubator.vector is there, see `Step4.vectorWalk`.
+ */
+final class VectorWalk implements SurvivorWalk {
+    static final VectorSpecies<Long> longs = LongVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Integer> ints = VectorSpecies.of(int.class, VectorShape.forBitSize(longs.vectorBitSize() / 2));
+    static final int lanes = longs.length();
+
+    VectorWalk() {}
+
+    @Override
+    public int lanes() {
+        return lanes;
+    }
+
+    // The lanes of each wheel are kept in `context` between iterations.
+    @Override
+    public void forEachSurvivor(long z0, long steps, Step4.AuxPrimeLookups lookups, SearchContext context, LongConsumer survivor) {
+        final var wheels = lookups.wheels();
+        final var n = wheels.size();
+        final var moduli = wheels.moduli();
+        final var multiplierM = lookups.multiplierM();
+        // Lanes lanes * i, ..., lanes * (i + 1) - 1 hold z mod Q for wheel i, which steps by laneSteps[i].
+        final var laneResidues = context.laneResidues(n * lanes);
+        final var laneSteps = context.laneSteps(n);
+        for (int i = 0; i < n; i++) {
+            final var q = moduli[i];
+            final var mModQ = wheels.increments()[i];
+            var r = wheels.reducers()[i].floorMod(z0);
+            for (int t = 0; t < lanes; t++) {
+                laneResidues[i * lanes + t] = r;
+                r += mModQ;
+                if (r >= q) r -= q;
+            }
+            laneSteps[i] = (int) ((long) lanes * mModQ % q);
+        }
+
+        final var words = context.laneIndices(lanes);
+        final var vectorSteps = steps - steps % lanes;
+        for (long j = 0; j < vectorSteps; j += lanes) {
+            var passes = LongVector.broadcast(longs, 1L);
+            for (int i = 0; i < n; i++) {
+                final var r = IntVector.fromArray(ints, laneResidues, i * lanes);
+                r.lanewise(VectorOperators.LSHR, 6).intoArray(words, 0);
+                final var bits = LongVector.fromArray(longs, wheels.bits()[i], 0, words, 0);
+                final var shifts = (LongVector) r.and(63).convertShape(VectorOperators.I2L, longs, 0);
+                passes = passes.and(bits.lanewise(VectorOperators.LSHR, shifts));
+                final var next = r.add(laneSteps[i]);
+                next.sub(moduli[i], next.compare(VectorOperators.GE, moduli[i])).intoArray(laneResidues, i * lanes);
+            }
+            final var z = z0 + j * multiplierM;
+            for (var mask = passes.and(1L).compare(VectorOperators.NE, 0L).toLong(); mask != 0; mask &= mask - 1) {
+                survivor.accept(z + Long.numberOfTrailingZeros(mask) * multiplierM);
+            }
+        }
+        // The last steps % lanes z.
+        for (long j = vectorSteps; j < steps; j++) {
+            final var z = z0 + j * multiplierM;
+            if (wheels.passes(z)) survivor.accept(z);
+        }
+    }
+}